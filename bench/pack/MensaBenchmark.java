@@ -0,0 +1,440 @@
+package pack;
+
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.TableModel;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaLocation;
+import edu.kit.aifb.atks.mensascraper.lib.MensaMealType;
+
+/**
+ * The {@code MensaBenchmark} class measures the hot paths of the application
+ * against generated histories: reading and writing the history file,
+ * streaming it into a {@code MensaReport}, filling the overview and the
+ * history table, switching the days of the meal plan and
+ * fetching the meal plan from the {@code MensaStubSource}. The latency per day
+ * of fetching the plan with injected latency and failures is reported
+ * separately as {@code fetch.tail}.
+ * <p>
+ * Every benchmark is warmed up first and then run for a number of
+ * measurement iterations of fixed duration. For each benchmark the throughput
+ * with its standard deviation over the iterations is reported, together with
+ * the allocation rate, the bytes allocated per operation and the number of
+ * garbage collections, like the {@code gc} profiler of JMH.
+ * <p>
+ * The benchmarks run on the Event Dispatch Thread, as the views expect, with
+ * the console output of the application suppressed. The files are written to
+ * a temporary directory. The following system properties configure a run:
+ * <ul>
+ * <li>{@code mensa.bench.sizes}: the history sizes, default
+ * {@code 1000,100000,1000000}</li>
+ * <li>{@code mensa.bench.warmup}: the number of warmup iterations, default
+ * {@code 3}</li>
+ * <li>{@code mensa.bench.iterations}: the number of measurement iterations,
+ * default {@code 5}</li>
+ * <li>{@code mensa.bench.time}: the duration of an iteration in milliseconds,
+ * default {@code 1000}</li>
+ * </ul>
+ * The only argument is an optional regular expression; only benchmarks whose
+ * name contains a match are run.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaBenchmark {
+
+    private static final String[] DISH_NAMES = { "Zartweizen-Kartoffel-Gratin", "Chili con Carne", "Blattsalat",
+            "Erdbeerjoghurt", "Schweinegeschnetzeltes mit Spätzle", "Seelachsfilet mit Kartoffelsalat",
+            "Gemüse-Lasagne", "Linsen-Dal mit Basmatireis", "Currywurst mit Pommes", "Tofu-Bowl" };
+
+    private static final PrintStream console = System.out;
+    private static final PrintStream silent = new PrintStream(OutputStream.nullOutputStream());
+
+    private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    private static int warmupIterations;
+    private static int measurementIterations;
+    private static long iterationMillis;
+    private static Pattern filter;
+
+    // Keeps the results of the operations alive, so they are not optimized away
+    static volatile int sink;
+
+    /**
+     * A measured operation.
+     */
+    interface Operation {
+
+        /**
+         * Runs the operation once.
+         *
+         * @return a value derived from the result of the operation
+         * @throws Exception if the operation fails
+         */
+        Object run() throws Exception;
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args an optional regular expression selecting the benchmarks
+     * @throws Exception if a benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        // Must be set before MensaData is initialized
+        System.setProperty("java.awt.headless", System.getProperty("java.awt.headless", "true"));
+        System.setProperty("mensa.source", "stub");
+        System.setProperty("mensa.stubLatency", "0");
+        System.setProperty("mensa.fetchRate", "1000000"); // Measures the fetch path, not the rate limit
+
+        warmupIterations = Integer.getInteger("mensa.bench.warmup", 3);
+        measurementIterations = Integer.getInteger("mensa.bench.iterations", 5);
+        iterationMillis = Long.getLong("mensa.bench.time", 1000);
+        filter = args.length > 0 ? Pattern.compile(args[0]) : null;
+        List<Integer> sizes = new ArrayList<>();
+        for (String size : System.getProperty("mensa.bench.sizes", "1000,100000,1000000").split(",")) {
+            sizes.add(Integer.parseInt(size.trim()));
+        }
+
+        File directory = Files.createTempDirectory("mensa-bench").toFile();
+        File snapshotFile = new File(directory, "selectedMealList.txt");
+        MensaData.setPlanCache(new MensaPlanCache(new File(directory, "cache")));
+        MensaData.setHistoryJournal(new MensaHistoryJournal(snapshotFile,
+                new File(directory, "selectedMealList.journal"), MensaData.selectedMealList));
+        MensaData.setFetchEngine(new MensaFetchEngine(new MensaStubSource(0)));
+
+        console.printf("%-28s %9s %12s %10s %11s %12s %5s%n", "Benchmark", "Size", "ops/s", "Error", "alloc MB/s",
+                "B/op", "GCs");
+
+        // The views are created once, the plan view loads the meal plan from the stub
+        MensaGUIPlan[] plan = new MensaGUIPlan[1];
+        MensaGUIHistory[] history = new MensaGUIHistory[1];
+        MensaGUIOverview[] overview = new MensaGUIOverview[1];
+        onEventDispatchThread(() -> {
+            System.setOut(silent);
+            plan[0] = new MensaGUIPlan();
+            history[0] = new MensaGUIHistory();
+            overview[0] = new MensaGUIOverview();
+            System.setOut(console);
+            return null;
+        });
+        while (!MensaData.pendingDays.isEmpty()) {
+            Thread.sleep(10);
+        }
+        onEventDispatchThread(() -> null); // Lets the loader publish its last days
+
+        run("fetch", 0, () -> MensaData.fetchLibrary(true).getMeals().size());
+        if (filter == null || filter.matcher("fetch.tail").find()) {
+            tailLatency(new File(directory, "recording"));
+        }
+        run("plan.showMeals", 0, () -> {
+            // Shows every day of every location, like paging through the combo boxes
+            int shown = 0;
+            for (int l = 0; l < plan[0].getLocationComboBox().getItemCount(); l++) {
+                plan[0].getLocationComboBox().setSelectedIndex(l);
+                for (int d = 0; d < plan[0].getDateComboBox().getItemCount(); d++) {
+                    plan[0].getDateComboBox().setSelectedIndex(d);
+                    shown += plan[0].getTableModel().getRowCount();
+                }
+            }
+            return shown;
+        });
+
+        for (int size : sizes) {
+            writeHistory(snapshotFile, size);
+            onEventDispatchThread(() -> {
+                System.setOut(silent);
+                MensaMain.readFileData();
+                System.setOut(console);
+                return null;
+            });
+
+            run("readFileData", size, () -> {
+                MensaMain.readFileData();
+                return MensaData.selectedMealList.size();
+            });
+            run("writeFileData", size, () -> {
+                MensaMain.writeFileData();
+                return snapshotFile.length();
+            });
+            run("report", size, () -> {
+                // Streams the history without keeping it, like the headless report
+                MensaReport report = new MensaReport();
+                report.readHistory(MensaData.historyJournal);
+                StringWriter writer = new StringWriter();
+                report.write(writer, MensaReport.Format.CSV, MensaHistoryRollups.Granularity.MONTH);
+                return writer.toString().length();
+            });
+            run("overview.preTableFill", size, () -> {
+                overview[0].preTableFill("Gesamt");
+                return overview[0].getTableModel().getRowCount();
+            });
+            for (MensaHistoryRollups.Granularity granularity : MensaHistoryRollups.Granularity.values()) {
+                run("overview.preTableFill(" + granularity + ")", size, () -> {
+                    overview[0].preTableFill(granularity);
+                    return overview[0].getTableModel().getRowCount();
+                });
+            }
+            run("history.tableFill", size, () -> {
+                // Reads every cell, like painting or exporting the whole table
+                history[0].tableFill();
+                TableModel model = history[0].getTable().getModel();
+                int hash = 0;
+                for (int row = 0; row < model.getRowCount(); row++) {
+                    for (int column = 0; column < model.getColumnCount(); column++) {
+                        hash += model.getValueAt(row, column).hashCode();
+                    }
+                }
+                return hash;
+            });
+        }
+        System.exit(0); // Stops the journal and the fetch threads
+    }
+
+    /**
+     * Measures the latency per day of fetching the meal plan from a replayed
+     * recording of the {@code MensaStubSource} with injected latency and
+     * failures, with and without retries, and with one location hanging, with
+     * and without circuit breakers. Prints the percentiles of the latency per
+     * day and the share of days fetched over twenty fetches of the whole plan.
+     *
+     * @param directory the directory for the recording
+     */
+    static void tailLatency(File directory) {
+        MensaMealSource recorder = new MensaRecordingSource(new MensaStubSource(0), directory);
+        for (MensaDay day : planDays()) {
+            recorder.fetchMeals(day.getLocation(), day.getDate());
+        }
+        MensaMealSource flaky = new MensaReplaySource(directory, 30, 120, 0.1, 1);
+        MensaMealSource outage = new MensaMealSource() {
+            private final MensaMealSource replay = new MensaReplaySource(directory, 30, 120, 0, 1);
+
+            @Override
+            public List<MensaData> fetchMeals(MensaLocation location, LocalDate date) {
+                if (location == MensaLocation.MOLTKE) {
+                    try {
+                        Thread.sleep(2000); // The site of this location hangs
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IllegalStateException("Moltke antwortet nicht");
+                }
+                return replay.fetchMeals(location, date);
+            }
+        };
+
+        console.printf("%n%-28s %8s %8s %8s %8s %9s %8s%n", "fetch.tail", "p50 ms", "p90 ms", "p99 ms", "max ms",
+                "fetched", "retries");
+        tailLatency("flaky, no retries", new MensaFetchEngine(flaky, 24, 1000, 0, 250, 4000,
+                new MensaRateLimiter(50, 24), Integer.MAX_VALUE, 30000));
+        tailLatency("flaky, 2 retries", new MensaFetchEngine(flaky, 24, 1000, 2, 250, 4000,
+                new MensaRateLimiter(50, 24), Integer.MAX_VALUE, 30000));
+        tailLatency("outage, no breaker", new MensaFetchEngine(outage, 24, 1000, 2, 250, 4000,
+                new MensaRateLimiter(50, 24), Integer.MAX_VALUE, 30000));
+        tailLatency("outage, breaker", new MensaFetchEngine(outage, 24, 1000, 2, 250, 4000,
+                new MensaRateLimiter(50, 24), 5, 30000));
+        console.println();
+    }
+
+    /**
+     * Fetches the whole plan twenty times with an engine and prints the
+     * percentiles of the latency per day.
+     *
+     * @param name   the name of the configuration
+     * @param engine the engine to measure
+     */
+    private static void tailLatency(String name, MensaFetchEngine engine) {
+        System.setOut(silent);
+        List<Long> millis = new ArrayList<>();
+        int fetched = 0;
+        int retries = 0;
+        List<MensaDay> days = planDays();
+        for (int i = 0; i < 20; i++) {
+            MensaFetchEngine.Result result = engine.fetch(days);
+            millis.addAll(result.getDayMillis().values());
+            fetched += result.getMeals().size();
+            retries += result.getRetries();
+        }
+        engine.shutdown();
+        System.setOut(console);
+        Collections.sort(millis);
+        console.printf("  %-26s %8d %8d %8d %8d %8.1f%% %8d%n", name, percentile(millis, 0.5),
+                percentile(millis, 0.9), percentile(millis, 0.99), millis.get(millis.size() - 1),
+                100.0 * fetched / millis.size(), retries);
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1));
+    }
+
+    private static List<MensaDay> planDays() {
+        List<MensaDay> days = new ArrayList<>();
+        for (LocalDate date : MensaData.createDateList()) {
+            for (MensaLocation location : MensaLocation.values()) {
+                days.add(new MensaDay(location, date));
+            }
+        }
+        return days;
+    }
+
+    /**
+     * Writes a generated history to a text history file. The meals are spread
+     * over the days before today, about three per day, in date order.
+     *
+     * @param file the file to write
+     * @param size the number of meals
+     * @throws IOException if the file cannot be written
+     */
+    static void writeHistory(File file, int size) throws IOException {
+        Random random = new Random(size);
+        MensaMealType[] types = MensaMealType.values();
+        MensaLocation[] locations = MensaLocation.values();
+        LocalDate date = LocalDate.now().minusDays(size / 3 + 1);
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write(MensaHistoryJournal.HEADER + "\n");
+            for (int i = 0; i < size; i++) {
+                if (random.nextInt(3) == 0) {
+                    date = date.plusDays(1);
+                }
+                int n = random.nextInt(DISH_NAMES.length * 20);
+                String name = DISH_NAMES[n % DISH_NAMES.length] + (n < DISH_NAMES.length ? "" : " " + n);
+                writer.write(new MensaData(date.format(MensaData.formatter), name, 1.5f + (n % 12) * 0.4f,
+                        types[n % types.length], 300f + n, 10f + n % 30, 40f + n % 50, 5f + n % 20,
+                        locations[n % locations.length]).toCsvLine() + "\n");
+            }
+        }
+    }
+
+    /**
+     * Warms up and measures an operation on the Event Dispatch Thread and
+     * prints the result, unless the benchmark is filtered out.
+     *
+     * @param name      the name of the benchmark
+     * @param size      the size of the history, {@code 0} if it does not matter
+     * @param operation the measured operation
+     * @throws Exception if the operation fails
+     */
+    static void run(String name, int size, Operation operation) throws Exception {
+        if (filter != null && !filter.matcher(name).find()) {
+            return;
+        }
+        onEventDispatchThread(() -> {
+            System.setOut(silent);
+            try {
+                for (int i = 0; i < warmupIterations; i++) {
+                    iterate(operation);
+                }
+                double[] throughputs = new double[measurementIterations];
+                long operations = 0;
+                long nanos = 0;
+                long allocated = 0;
+                long collections = 0;
+                for (int i = 0; i < measurementIterations; i++) {
+                    long allocatedBefore = allocatedBytes();
+                    long collectionsBefore = collections();
+                    long[] iteration = iterate(operation);
+                    allocated += allocatedBytes() - allocatedBefore;
+                    collections += collections() - collectionsBefore;
+                    operations += iteration[0];
+                    nanos += iteration[1];
+                    throughputs[i] = iteration[0] * 1e9 / iteration[1];
+                }
+
+                double mean = operations * 1e9 / nanos;
+                double variance = 0;
+                for (double throughput : throughputs) {
+                    variance += (throughput - mean) * (throughput - mean);
+                }
+                double deviation = measurementIterations > 1 ? Math.sqrt(variance / (measurementIterations - 1))
+                        : 0;
+                console.printf("%-28s %9s %12s %10s %11.1f %12d %5d%n", name, size == 0 ? "-" : size,
+                        format(mean), format(deviation), allocated / 1e6 / (nanos / 1e9), allocated / operations,
+                        collections);
+            } finally {
+                System.setOut(console);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Runs an operation repeatedly for the duration of one iteration, at
+     * least once.
+     *
+     * @param operation the operation
+     * @return the number of operations and the elapsed nanoseconds
+     * @throws Exception if the operation fails
+     */
+    private static long[] iterate(Operation operation) throws Exception {
+        long start = System.nanoTime();
+        long end = start + iterationMillis * 1_000_000;
+        long operations = 0;
+        long now;
+        do {
+            Object result = operation.run();
+            sink += result == null ? 0 : result.hashCode();
+            operations++;
+            now = System.nanoTime();
+        } while (now < end);
+        return new long[] { operations, now - start };
+    }
+
+    /**
+     * Returns the bytes allocated so far by all live threads, including the
+     * fetch and journal threads.
+     *
+     * @return the allocated bytes
+     */
+    private static long allocatedBytes() {
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(allocated, 0);
+        }
+        return total;
+    }
+
+    private static long collections() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(collector.getCollectionCount(), 0);
+        }
+        return total;
+    }
+
+    private static String format(double value) {
+        return value >= 100 ? String.format("%.0f", value) : String.format("%.3f", value);
+    }
+
+    /**
+     * Runs a task on the Event Dispatch Thread and waits for it.
+     *
+     * @param task the task
+     * @throws Exception if the task fails
+     */
+    private static void onEventDispatchThread(Operation task) throws Exception {
+        Exception[] failure = new Exception[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package pack;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaLocation;
+import edu.kit.aifb.atks.mensascraper.lib.MensaMealType;
+
+/**
+ * The {@code MensaBinaryHistory} class reads and writes the meal history in a
+ * compact binary format as an alternative to the semicolon separated
+ * {@code data/selectedMealList.txt}.
+ * <p>
+ * The file starts with a header (magic {@code MHB2}, record count, dish
+ * count, string count, offsets of the dish and the string table), followed by
+ * one fixed-width record per meal, the dish table and the string table. A
+ * record is the pair of the date as epoch day and the index of the dish in the
+ * dish table, plus the price and the index of the location in the string
+ * table. A dish holds the index of its name and type in the string table and
+ * its nutrients, so every dish and every name is stored only once. The dishes
+ * are read into the {@code MensaDishCatalog} when the file is opened. The
+ * records are read through a {@code FileChannel} in windows of 64 KB at
+ * {@code long} offsets, so the file may be larger than 2 GB and is not mapped
+ * into memory; single fields can be read without creating {@code MensaData}
+ * objects. The file stays open until the {@code MensaBinaryHistory} is
+ * closed, it has to be closed before the file is replaced. The window is
+ * shared, so an instance must not be read from several threads at once.
+ * <p>
+ * Files in the previous format {@code MHB1}, whose records hold the name
+ * index and the nutrients themselves, can still be read.
+ * <p>
+ * The conversion from and to the text format is lossless as long as the dates
+ * are in the {@code yyyy-MM-dd} format. It can be run from the command line:
+ * {@code java pack.MensaBinaryHistory toBinary <csv> <bin>} or
+ * {@code java pack.MensaBinaryHistory toCsv <bin> <csv>}.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaBinaryHistory implements Closeable {
+
+    private static final int MAGIC = 0x4D484232; // "MHB2"
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8 + 8;
+
+    /**
+     * The size of a single record in bytes.
+     */
+    public static final int RECORD_SIZE = 4 + 4 + 4 + 2 + 2;
+
+    /**
+     * The size of a single dish in bytes.
+     */
+    public static final int DISH_SIZE = 4 + 2 + 2 + 4 * 4;
+
+    private static final int DISH = 4;
+    private static final int PRICE = 8;
+    private static final int LOCATION = 12;
+
+    // Layout of the previous format, whose records hold the dish themselves
+    private static final int MAGIC_V1 = 0x4D484231; // "MHB1"
+    private static final int HEADER_SIZE_V1 = 4 + 4 + 4 + 8;
+    private static final int RECORD_SIZE_V1 = 4 + 4 + 2 + 2 + 5 * 4;
+
+    // Bytes read from the file at once; records are read from this window
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+    private long windowStart = -1;
+    private final int size;
+    private final String[] strings;
+    private final MensaDish[] dishes;
+    private final boolean v1;
+
+    /**
+     * Opens a binary history file and reads its string and dish table. The
+     * file stays open until the {@code MensaBinaryHistory} is closed.
+     *
+     * @param file the binary history file
+     * @throws IOException if the file cannot be read or has an invalid format
+     */
+    public MensaBinaryHistory(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long length = channel.size();
+            int magic = length < HEADER_SIZE_V1 ? 0 : window.getInt(load(0, 4));
+            if (magic == MAGIC_V1) {
+                v1 = true;
+                int header = load(0, HEADER_SIZE_V1);
+                size = window.getInt(header + 4);
+                strings = readStrings(window.getInt(header + 8), window.getLong(header + 12));
+                dishes = null;
+                return;
+            }
+            if (magic != MAGIC || length < HEADER_SIZE) {
+                throw new IOException("Keine binäre Historie: " + file.getName());
+            }
+            v1 = false;
+            int header = load(0, HEADER_SIZE);
+            size = window.getInt(header + 4);
+            int dishCount = window.getInt(header + 8);
+            int stringCount = window.getInt(header + 12);
+            long dishTable = window.getLong(header + 16);
+            strings = readStrings(stringCount, window.getLong(header + 24));
+
+            // Intern the dishes, so all meals of a dish share it
+            dishes = new MensaDish[dishCount];
+            for (int i = 0; i < dishes.length; i++) {
+                int offset = load(dishTable + (long) i * DISH_SIZE, DISH_SIZE);
+                dishes[i] = MensaData.catalog.intern(strings[window.getInt(offset)],
+                        MensaMealType.valueOf(strings[window.getShort(offset + 4)]), window.getFloat(offset + 8),
+                        window.getFloat(offset + 12), window.getFloat(offset + 16), window.getFloat(offset + 20));
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the string table.
+     *
+     * @param count  the number of strings
+     * @param offset the offset of the string table
+     * @return the strings
+     * @throws IOException if the file cannot be read
+     */
+    private String[] readStrings(int count, long offset) throws IOException {
+        String[] strings = new String[count];
+        for (int i = 0; i < strings.length; i++) {
+            int length = window.getInt(load(offset, 4));
+            offset += 4;
+            if (length <= WINDOW_SIZE) {
+                int position = load(offset, length);
+                strings[i] = new String(window.array(), position, length, StandardCharsets.UTF_8);
+            } else {
+                ByteBuffer bytes = ByteBuffer.allocate(length);
+                readFully(bytes, offset);
+                strings[i] = new String(bytes.array(), StandardCharsets.UTF_8);
+            }
+            offset += length;
+        }
+        return strings;
+    }
+
+    /**
+     * Makes sure the window holds the given bytes of the file, reading the file
+     * from {@code offset} on if it does not.
+     *
+     * @param offset the offset of the bytes in the file
+     * @param length the number of bytes, at most the size of the window
+     * @return the position of the bytes in the window
+     * @throws IOException if the file cannot be read or ends before the bytes
+     */
+    private int load(long offset, int length) throws IOException {
+        if (windowStart < 0 || offset < windowStart || offset + length > windowStart + window.limit()) {
+            window.clear();
+            windowStart = -1; // Invalid until the read succeeded
+            long position = offset;
+            while (window.hasRemaining()) {
+                int read = channel.read(window, position);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+            }
+            window.flip();
+            if (window.limit() < length) {
+                throw new EOFException("Binäre Historie ist unvollständig");
+            }
+            windowStart = offset;
+        }
+        return (int) (offset - windowStart);
+    }
+
+    /**
+     * Reads bytes of the file past the window.
+     *
+     * @param bytes  the buffer to fill
+     * @param offset the offset of the bytes in the file
+     * @throws IOException if the file cannot be read or ends before the bytes
+     */
+    private void readFully(ByteBuffer bytes, long offset) throws IOException {
+        while (bytes.hasRemaining()) {
+            int read = channel.read(bytes, offset);
+            if (read < 0) {
+                throw new EOFException("Binäre Historie ist unvollständig");
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Makes sure the window holds a record.
+     *
+     * @param index the index of the record
+     * @return the position of the record in the window
+     */
+    private int record(int index) {
+        try {
+            return v1 ? load(HEADER_SIZE_V1 + (long) index * RECORD_SIZE_V1, RECORD_SIZE_V1)
+                    : load(HEADER_SIZE + (long) index * RECORD_SIZE, RECORD_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes the file. The records cannot be read afterwards.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Returns the number of meals in the file.
+     *
+     * @return the number of records
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the date of a meal as epoch day.
+     *
+     * @param index the index of the record
+     * @return the days since 1970-01-01
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public int getEpochDay(int index) {
+        return window.getInt(record(index));
+    }
+
+    /**
+     * Returns the dish of a meal.
+     *
+     * @param index the index of the record
+     * @return the dish, interned in the {@code MensaDishCatalog}
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public MensaDish getDish(int index) {
+        int offset = record(index);
+        if (v1) {
+            return MensaData.catalog.intern(strings[window.getInt(offset + 4)],
+                    MensaMealType.valueOf(strings[window.getShort(offset + 8)]), window.getFloat(offset + 16),
+                    window.getFloat(offset + 20), window.getFloat(offset + 24), window.getFloat(offset + 28));
+        }
+        return dishes[window.getInt(offset + DISH)];
+    }
+
+    public String getMealName(int index) {
+        return getDish(index).getName();
+    }
+
+    public MensaMealType getMealType(int index) {
+        return getDish(index).getType();
+    }
+
+    public MensaLocation getMealLocation(int index) {
+        int offset = record(index) + (v1 ? 10 : LOCATION);
+        return MensaLocation.valueOf(strings[window.getShort(offset)]);
+    }
+
+    public float getMealPrice(int index) {
+        return window.getFloat(record(index) + (v1 ? 12 : PRICE));
+    }
+
+    public float getMealKcal(int index) {
+        return getDish(index).getKcal();
+    }
+
+    public float getMealProteins(int index) {
+        return getDish(index).getProteins();
+    }
+
+    public float getMealCarbs(int index) {
+        return getDish(index).getCarbs();
+    }
+
+    public float getMealFat(int index) {
+        return getDish(index).getFat();
+    }
+
+    /**
+     * Creates a {@code MensaData} object for a record. Dishes and dates are
+     * shared between the created objects.
+     *
+     * @param index the index of the record
+     * @return the meal
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public MensaData get(int index) {
+        return new MensaData(LocalDate.ofEpochDay(getEpochDay(index)).format(MensaData.formatter),
+                getDish(index), getMealPrice(index), getMealLocation(index));
+    }
+
+    /**
+     * Creates {@code MensaData} objects for all records.
+     *
+     * @return the meals in the order of the file
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public List<MensaData> toList() {
+        List<MensaData> meals = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            meals.add(get(i));
+        }
+        return meals;
+    }
+
+    /**
+     * Reads all meals of a binary history file and closes it.
+     *
+     * @param file the binary history file
+     * @return the meals in the order of the file
+     * @throws IOException if the file cannot be read or has an invalid format
+     */
+    public static List<MensaData> read(File file) throws IOException {
+        try (MensaBinaryHistory history = new MensaBinaryHistory(file)) {
+            return history.toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes meals to a binary history file.
+     *
+     * @param meals the meals to write
+     * @param file  the binary history file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(List<MensaData> meals, File file) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        Map<MensaDish, Integer> dishIds = new HashMap<>();
+        List<MensaDish> dishes = new ArrayList<>();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            ByteBuffer record = ByteBuffer.allocate(Math.max(RECORD_SIZE, DISH_SIZE));
+
+            out.writeInt(MAGIC);
+            out.writeInt(meals.size());
+            out.writeInt(0); // Dish count, known after the records
+            out.writeInt(0); // String count, known after the records
+            out.writeLong(0); // Dish table offset, known after the records
+            out.writeLong(0); // String table offset, known after the records
+            for (MensaData meal : meals) {
+                Integer dishId = dishIds.get(meal.getDish());
+                if (dishId == null) {
+                    dishId = dishes.size();
+                    dishIds.put(meal.getDish(), dishId);
+                    dishes.add(meal.getDish());
+                }
+                record.clear();
+                record.putInt((int) LocalDate.parse(meal.getMealDate(), MensaData.formatter).toEpochDay());
+                record.putInt(dishId);
+                record.putFloat(meal.getMealPrice());
+                record.putShort((short) id(meal.getMealLocation().name(), ids, strings));
+                record.putShort((short) 0);
+                out.write(record.array(), 0, RECORD_SIZE);
+            }
+            for (MensaDish dish : dishes) {
+                record.clear();
+                record.putInt(id(dish.getName(), ids, strings));
+                record.putShort((short) id(dish.getType().name(), ids, strings));
+                record.putShort((short) 0);
+                record.putFloat(dish.getKcal());
+                record.putFloat(dish.getProteins());
+                record.putFloat(dish.getCarbs());
+                record.putFloat(dish.getFat());
+                out.write(record.array(), 0, DISH_SIZE);
+            }
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        // Fill in the counts and the table offsets
+        long dishTable = HEADER_SIZE + (long) meals.size() * RECORD_SIZE;
+        try (RandomAccessFile header = new RandomAccessFile(file, "rw")) {
+            header.seek(8);
+            header.writeInt(dishes.size());
+            header.writeInt(strings.size());
+            header.writeLong(dishTable);
+            header.writeLong(dishTable + (long) dishes.size() * DISH_SIZE);
+        }
+    }
+
+    /**
+     * Returns the index of a string in the string table, adding it if needed.
+     *
+     * @param string  the string
+     * @param ids     the indices of the strings added so far
+     * @param strings the string table
+     * @return the index of the string
+     */
+    private static int id(String string, Map<String, Integer> ids, List<String> strings) {
+        Integer id = ids.get(string);
+        if (id == null) {
+            id = strings.size();
+            ids.put(string, id);
+            strings.add(string);
+        }
+        return id;
+    }
+
+    /**
+     * Converts a history in the text format into the binary format.
+     *
+     * @param csvFile    the text history file including its header line
+     * @param binaryFile the binary history file to write
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void csvToBinary(File csvFile, File binaryFile) throws IOException {
+        List<MensaData> meals = new ArrayList<>();
+        try (MensaCsvReader reader = new MensaCsvReader(
+                new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8))) {
+            reader.skipLine(); // Skip the header line
+            MensaData meal;
+            while ((meal = reader.next()) != null) {
+                meals.add(meal);
+            }
+            MensaMain.printProblems(csvFile, reader);
+        }
+        write(meals, binaryFile);
+    }
+
+    /**
+     * Converts a history in the binary format into the text format.
+     *
+     * @param binaryFile the binary history file
+     * @param csvFile    the text history file to write
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void binaryToCsv(File binaryFile, File csvFile) throws IOException {
+        try (MensaBinaryHistory history = new MensaBinaryHistory(binaryFile);
+                Writer writer = new BufferedWriter(
+                        new OutputStreamWriter(new FileOutputStream(csvFile), StandardCharsets.UTF_8))) {
+            writer.write(MensaHistoryJournal.HEADER + "\n");
+            for (int i = 0; i < history.size(); i++) {
+                writer.write(history.get(i).toCsvLine() + "\n");
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Converts a history file between the text and the binary format.
+     *
+     * @param args {@code toBinary <csv> <bin>} or {@code toCsv <bin> <csv>}
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("toBinary")) {
+            csvToBinary(new File(args[1]), new File(args[2]));
+        } else if (args.length == 3 && args[0].equals("toCsv")) {
+            binaryToCsv(new File(args[1]), new File(args[2]));
+        } else {
+            System.out.println("Verwendung: MensaBinaryHistory toBinary <csv> <bin> | toCsv <bin> <csv>");
+        }
+    }
+}
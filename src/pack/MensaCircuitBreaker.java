@@ -0,0 +1,109 @@
+package pack;
+
+/**
+ * The {@code MensaCircuitBreaker} class stops requests to a mensa location
+ * whose requests keep failing, so that a site that is down is not flooded with
+ * requests that would only time out.
+ * <p>
+ * The breaker starts closed and lets every request pass. After a number of
+ * failures in a row it opens and rejects all requests for a while. Then it
+ * lets a single trial request pass: if it succeeds the breaker closes again,
+ * if it fails the breaker stays open for another while. The breaker is
+ * thread-safe.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaCircuitBreaker {
+
+    /**
+     * The states of a {@code MensaCircuitBreaker}.
+     */
+    public enum State {
+        /**
+         * Requests pass.
+         */
+        CLOSED,
+        /**
+         * Requests are rejected.
+         */
+        OPEN,
+        /**
+         * A single trial request has been let through and has not finished yet.
+         */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    /**
+     * Constructs a new closed {@code MensaCircuitBreaker}.
+     *
+     * @param failureThreshold the number of failures in a row that open the
+     *                         breaker
+     * @param openMillis       how long the breaker rejects requests before it
+     *                         lets a trial request pass
+     */
+    public MensaCircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openMillis * 1_000_000;
+    }
+
+    /**
+     * Returns whether a request may be sent now. Once the open time is over,
+     * the first caller gets to send the trial request.
+     *
+     * @return {@code true} if the request may be sent
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt >= openNanos) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                return false; // The trial request is still running
+        }
+    }
+
+    /**
+     * Records a successful request, which closes the breaker.
+     */
+    public synchronized void recordSuccess() {
+        failures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records a failed request. Opens the breaker if the trial request failed
+     * or too many requests have failed in a row.
+     */
+    public synchronized void recordFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public long getOpenMillis() {
+        return openNanos / 1_000_000;
+    }
+}
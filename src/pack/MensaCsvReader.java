@@ -0,0 +1,555 @@
+package pack;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaLocation;
+import edu.kit.aifb.atks.mensascraper.lib.MensaMealType;
+
+/**
+ * The {@code MensaCsvReader} class reads meals in the semicolon separated
+ * format of {@code data/selectedMealList.txt} one record at a time.
+ * <p>
+ * A field may be enclosed in double quotes; inside the quotes, semicolons and
+ * line breaks are part of the field and a double quote is written twice. Only
+ * names that need it are quoted by {@link #quote(String)}, so files written
+ * before quoting was introduced are read unchanged.
+ * <p>
+ * The reader scans its input in a fixed buffer and copies each record once
+ * into a reusable buffer, remembering where its fields start and end. Numbers,
+ * types and locations are parsed right there. Dates, names and dishes that
+ * occurred before are reused instead of being created again, so reading a
+ * record usually allocates nothing but the meal itself.
+ * <p>
+ * A malformed record does not stop the reader: it is skipped and recorded as
+ * a {@link Problem} with its line number. A reader is not thread-safe.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaCsvReader implements Closeable {
+
+    /**
+     * The names of the fields of a record, as written in the header line.
+     */
+    static final String[] FIELDS = { "mealDate", "mealName", "mealPrice", "mealType", "mealKcal", "mealProteins",
+            "mealCarbs", "mealFat", "mealLocation" };
+
+    private static final int DATE = 0;
+    private static final int NAME = 1;
+    private static final int PRICE = 2;
+    private static final int TYPE = 3;
+    private static final int KCAL = 4;
+    private static final int PROTEINS = 5;
+    private static final int CARBS = 6;
+    private static final int FAT = 7;
+    private static final int LOCATION = 8;
+
+    private static final int MAX_PROBLEMS = 1000;
+
+    // Powers of ten that are exact as float, for parsing numbers without a String
+    private static final float[] POWERS_OF_TEN = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f,
+            1e10f };
+
+    private static final MensaMealType[] TYPES = MensaMealType.values();
+    private static final MensaLocation[] LOCATIONS = MensaLocation.values();
+
+    private final Reader reader;
+    private final char[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+
+    // The current record without quotes, and where its fields start and end
+    private char[] record = new char[256];
+    private int recordLength;
+    private final int[] fieldStarts = new int[FIELDS.length];
+    private final int[] fieldEnds = new int[FIELDS.length];
+    private int fieldCount;
+
+    private int lineNumber;
+    private int recordLine;
+    private int skipped;
+    private final List<Problem> problems = new ArrayList<>();
+
+    private String lastDate;
+
+    // Open addressing table of the names read so far, with the last dish of each
+    private String[] names = new String[64];
+    private MensaDish[] dishes = new MensaDish[64];
+    private int nameCount;
+
+    /**
+     * Constructs a new {@code MensaCsvReader} with a buffer of 64K characters.
+     *
+     * @param reader the input, should not be buffered
+     */
+    public MensaCsvReader(Reader reader) {
+        this(reader, 1 << 16);
+    }
+
+    /**
+     * Constructs a new {@code MensaCsvReader}.
+     *
+     * @param reader     the input
+     * @param bufferSize the number of characters read from the input at once
+     */
+    public MensaCsvReader(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[Math.max(bufferSize, 16)];
+    }
+
+    /**
+     * Parses a single line. Use a reader for files, it reuses its buffers and
+     * the parsed names.
+     *
+     * @param line the semicolon separated meal data
+     * @return the parsed meal
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    static MensaData parseLine(String line) {
+        MensaCsvReader csvReader = new MensaCsvReader(new StringReader(line), line.length() + 1);
+        try {
+            if (!csvReader.nextRecord()) {
+                throw new IllegalArgumentException("Leere Zeile");
+            }
+            return csvReader.toMeal();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // A StringReader does not fail
+        }
+    }
+
+    /**
+     * Returns a field as it has to be written to be read back unchanged: in
+     * double quotes if it contains a semicolon, a double quote or a line
+     * break, as is otherwise.
+     *
+     * @param field the field
+     * @return the field to write
+     */
+    public static String quote(String field) {
+        if (field.indexOf(';') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0
+                && field.indexOf('\r') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Skips the next line, such as a header line.
+     *
+     * @throws IOException if the input cannot be read
+     */
+    public void skipLine() throws IOException {
+        while (fill()) {
+            char c = buffer[position++];
+            if (c == '\n') {
+                lineNumber++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the next well-formed meal. Malformed records on the way are
+     * skipped and recorded as problems, empty lines are ignored.
+     *
+     * @return the meal, or {@code null} at the end of the input
+     * @throws IOException if the input cannot be read
+     */
+    public MensaData next() throws IOException {
+        while (nextRecord()) {
+            try {
+                return toMeal();
+            } catch (IllegalArgumentException e) {
+                skipped++;
+                if (problems.size() < MAX_PROBLEMS) {
+                    problems.add(new Problem(recordLine, e.getMessage()));
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads the next non-empty record into the record buffer.
+     *
+     * @return {@code false} at the end of the input
+     * @throws IOException if the input cannot be read
+     */
+    private boolean nextRecord() throws IOException {
+        while (fill()) {
+            recordLength = 0;
+            fieldCount = 0;
+            recordLine = lineNumber + 1;
+            boolean quoted = false;
+            boolean fieldStart = true;
+            int fieldStartAt = 0;
+            boolean lineEnded = false;
+
+            while (fill()) {
+                char c = buffer[position++];
+                if (quoted) {
+                    if (c == '"') {
+                        if (!fill() || buffer[position] != '"') {
+                            quoted = false; // Closing quote
+                            continue;
+                        }
+                        position++; // Escaped quote
+                    } else if (c == '\n') {
+                        lineNumber++;
+                    }
+                    append(c);
+                } else if (c == '"' && fieldStart) {
+                    quoted = true;
+                    fieldStart = false;
+                } else if (c == ';') {
+                    endField(fieldStartAt);
+                    fieldStartAt = recordLength;
+                    fieldStart = true;
+                } else if (c == '\n') {
+                    lineNumber++;
+                    lineEnded = true;
+                    break;
+                } else {
+                    // Copy the characters up to the next separator at once
+                    int end = position;
+                    while (end < limit && buffer[end] != ';' && buffer[end] != '\n') {
+                        end++;
+                    }
+                    append(position - 1, end);
+                    position = end;
+                    fieldStart = false;
+                }
+            }
+            if (!lineEnded) {
+                lineNumber++; // The last line has no line break
+            }
+            if (recordLength > 0 && record[recordLength - 1] == '\r') {
+                recordLength--;
+            }
+            if (fieldCount == 0 && recordLength == fieldStartAt) {
+                continue; // Empty line
+            }
+            endField(fieldStartAt);
+            if (quoted) {
+                fieldCount = -1; // Reported by toMeal
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Converts the fields of the current record into a meal.
+     *
+     * @return the meal
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    private MensaData toMeal() {
+        if (fieldCount == -1) {
+            throw new IllegalArgumentException("Anführungszeichen nicht geschlossen");
+        }
+        if (fieldCount != FIELDS.length - 1 && fieldCount != FIELDS.length) {
+            throw new IllegalArgumentException(
+                    (FIELDS.length - 1) + " oder " + FIELDS.length + " Felder erwartet, " + fieldCount + " gefunden");
+        }
+        String date = date();
+        float price = number(PRICE);
+        MensaMealType type = type();
+        float kcal = number(KCAL);
+        float proteins = number(PROTEINS);
+        float carbs = number(CARBS);
+        float fat = number(FAT);
+        MensaLocation location = fieldCount == FIELDS.length ? location() : MensaLocation.ADENAUERRING;
+        return new MensaData(date, dish(type, kcal, proteins, carbs, fat), price, location);
+    }
+
+    /**
+     * Returns the date of the current record, the same instance as the date of
+     * the previous record if they are equal.
+     */
+    private String date() {
+        int start = fieldStarts[DATE];
+        int length = fieldEnds[DATE] - start;
+        if (length != 10 || record[start + 4] != '-' || record[start + 7] != '-') {
+            throw invalid(DATE);
+        }
+        for (int i = 0; i < 10; i++) {
+            if (i != 4 && i != 7 && (record[start + i] < '0' || record[start + i] > '9')) {
+                throw invalid(DATE);
+            }
+        }
+        if (lastDate == null || !matches(lastDate, start, length)) {
+            try {
+                LocalDate.of(digits(start, 4), digits(start + 5, 2), digits(start + 8, 2));
+            } catch (DateTimeException e) {
+                throw invalid(DATE);
+            }
+            lastDate = MensaData.catalog.internDate(new String(record, start, length));
+        }
+        return lastDate;
+    }
+
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            value = value * 10 + (record[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Returns the dish of the current record. The name is looked up in the
+     * names read so far; if its last dish has the same type and nutrients, that
+     * dish is returned without asking the catalog.
+     */
+    private MensaDish dish(MensaMealType type, float kcal, float proteins, float carbs, float fat) {
+        int start = fieldStarts[NAME];
+        int length = fieldEnds[NAME] - start;
+        if (length == 0) {
+            throw new IllegalArgumentException("Feld mealName ist leer");
+        }
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + record[i];
+        }
+        int mask = names.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (names[slot] != null) {
+            String name = names[slot];
+            if (name.hashCode() == hash && matches(name, start, length)) {
+                MensaDish dish = dishes[slot];
+                if (dish.getType() != type || Float.compare(dish.getKcal(), kcal) != 0
+                        || Float.compare(dish.getProteins(), proteins) != 0
+                        || Float.compare(dish.getCarbs(), carbs) != 0 || Float.compare(dish.getFat(), fat) != 0) {
+                    dish = MensaData.catalog.intern(name, type, kcal, proteins, carbs, fat);
+                    dishes[slot] = dish;
+                }
+                return dish;
+            }
+            slot = (slot + 1) & mask;
+        }
+        MensaDish dish = MensaData.catalog.intern(new String(record, start, length), type, kcal, proteins, carbs,
+                fat);
+        names[slot] = dish.getName();
+        dishes[slot] = dish;
+        if (++nameCount * 2 > names.length) {
+            growNames();
+        }
+        return dish;
+    }
+
+    /**
+     * Parses a decimal number of the current record. Numbers with up to seven
+     * significant digits and no exponent, like every price and nutrient written
+     * by {@code Float.toString}, are computed from the characters directly and
+     * rounded exactly like {@code Float.parseFloat}; others fall back to it.
+     */
+    private float number(int field) {
+        int start = fieldStarts[field];
+        int end = fieldEnds[field];
+        int i = start;
+        boolean negative = false;
+        if (i < end && (record[i] == '-' || record[i] == '+')) {
+            negative = record[i] == '-';
+            i++;
+        }
+        int mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        boolean simple = i < end;
+        for (; i < end && simple; i++) {
+            char c = record[i];
+            if (c >= '0' && c <= '9') {
+                if (mantissa != 0 || c != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (decimals >= 0) {
+                    decimals++;
+                }
+                simple = digits <= 7 && (decimals < POWERS_OF_TEN.length);
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                simple = false;
+            }
+        }
+        if (simple && decimals != 0 && (decimals > 0 || i > start + (negative ? 1 : 0))) {
+            // Both operands are exact floats, so the division is rounded correctly
+            float value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+            return negative ? -value : value;
+        }
+        try {
+            return Float.parseFloat(new String(record, start, end - start));
+        } catch (NumberFormatException e) {
+            throw invalid(field);
+        }
+    }
+
+    private MensaMealType type() {
+        for (MensaMealType type : TYPES) {
+            if (matches(type.name(), fieldStarts[TYPE], fieldEnds[TYPE] - fieldStarts[TYPE])) {
+                return type;
+            }
+        }
+        throw invalid(TYPE);
+    }
+
+    private MensaLocation location() {
+        for (MensaLocation location : LOCATIONS) {
+            if (matches(location.name(), fieldStarts[LOCATION], fieldEnds[LOCATION] - fieldStarts[LOCATION])) {
+                return location;
+            }
+        }
+        throw invalid(LOCATION);
+    }
+
+    private IllegalArgumentException invalid(int field) {
+        return new IllegalArgumentException("Ungültiger Wert im Feld " + FIELDS[field] + ": "
+                + new String(record, fieldStarts[field], fieldEnds[field] - fieldStarts[field]));
+    }
+
+    /**
+     * Returns whether a string equals a range of the record buffer.
+     */
+    private boolean matches(String s, int start, int length) {
+        if (s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != record[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes sure that there is a character to read in the buffer.
+     *
+     * @return {@code false} at the end of the input
+     */
+    private boolean fill() throws IOException {
+        while (position == limit) {
+            if (endOfInput) {
+                return false;
+            }
+            int read = reader.read(buffer, 0, buffer.length);
+            if (read < 0) {
+                endOfInput = true;
+                return false;
+            }
+            position = 0;
+            limit = read;
+        }
+        return true;
+    }
+
+    private void append(int start, int end) {
+        int length = end - start;
+        if (recordLength + length > record.length) {
+            char[] grown = new char[Math.max(record.length * 2, recordLength + length)];
+            System.arraycopy(record, 0, grown, 0, recordLength);
+            record = grown;
+        }
+        System.arraycopy(buffer, start, record, recordLength, length);
+        recordLength += length;
+    }
+
+    private void append(char c) {
+        if (recordLength == record.length) {
+            char[] grown = new char[record.length * 2];
+            System.arraycopy(record, 0, grown, 0, recordLength);
+            record = grown;
+        }
+        record[recordLength++] = c;
+    }
+
+    private void endField(int start) {
+        if (fieldCount < FIELDS.length) {
+            fieldStarts[fieldCount] = start;
+            fieldEnds[fieldCount] = recordLength;
+        }
+        fieldCount++;
+    }
+
+    private void growNames() {
+        String[] oldNames = names;
+        MensaDish[] oldDishes = dishes;
+        names = new String[oldNames.length * 2];
+        dishes = new MensaDish[oldNames.length * 2];
+        int mask = names.length - 1;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                int hash = oldNames[i].hashCode();
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (names[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                names[slot] = oldNames[i];
+                dishes[slot] = oldDishes[i];
+            }
+        }
+    }
+
+    /**
+     * The {@code Problem} class describes a skipped record.
+     */
+    public static class Problem {
+
+        private final int lineNumber;
+        private final String message;
+
+        Problem(int lineNumber, String message) {
+            this.lineNumber = lineNumber;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "Zeile " + lineNumber + ": " + message;
+        }
+
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    // Getters for the class properties
+
+    /**
+     * Returns the problems found so far. At most the first 1000 are kept, see
+     * {@link #getSkipped()} for their number.
+     *
+     * @return the problems in the order of their lines
+     */
+    public List<Problem> getProblems() {
+        return Collections.unmodifiableList(problems);
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+}
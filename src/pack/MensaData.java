@@ -1,10 +1,17 @@
 package pack;
 
+import java.io.File;
 import java.text.DecimalFormat;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import edu.kit.aifb.atks.mensascraper.lib.*;
 
@@ -12,34 +19,103 @@ import edu.kit.aifb.atks.mensascraper.lib.*;
  * The {@code MensaData} class represents the data for a meal in a mensa.
  * It stores information such as the meal date, name, price, type, and
  * nutritional values.
+ * The name, type and nutrients are held by a {@code MensaDish} and the date
+ * string is shared, both interned in the {@code catalog}, so a meal only
+ * stores what differs between the offers of a dish: the date, the price and
+ * the location.
+ * <p>
+ * Its static part is the repository of the application, shared by the GUI on
+ * the Event Dispatch Thread, the fetch threads and the persistence threads:
+ * <ul>
+ * <li>The meal plan in the {@code mealStore} and the {@code pendingDays} and
+ * {@code failedDays} are thread-safe without locks. Every day is an immutable
+ * snapshot that a fetcher replaces as a whole.</li>
+ * <li>The history in the {@code selectedMealList} together with the
+ * {@code historyColumns}, {@code historyTotals} and {@code historyRollups} is
+ * guarded by the monitor of the {@code selectedMealList}. It is only changed
+ * through {@link #addSelectedMeal(MensaData)} and
+ * {@link #removeSelectedEntry(int)}, which update all of them and the
+ * {@code historyJournal} in one step. Single calls on the
+ * {@code selectedMealList} are atomic; reading the derived values, iterating
+ * or any other sequence of calls must hold its monitor.</li>
+ * <li>The date range from {@code currentDate} to {@code endDate} is only
+ * moved on the Event Dispatch Thread. Both are volatile, so fetches and
+ * listeners on other threads see the moved range.</li>
+ * <li>Persistence only holds that monitor to copy the history; the files are
+ * written while the GUI keeps working.</li>
+ * <li>{@code MensaDataListener}s are called on the thread that made a change,
+ * after the monitor has been released. The views expect the history to be
+ * changed on the Event Dispatch Thread.</li>
+ * </ul>
  * 
  * @author Philipp Schmidt (uggro)
  * @since version 1.0
  */
 public class MensaData {
 
+    // Every dish and date string is kept once in the catalog
+    static MensaDishCatalog catalog = new MensaDishCatalog();
+
     private String mealDate;
-    private String mealName;
+    private MensaDish dish;
     private float mealPrice;
-    private MensaMealType mealType;
-    private float mealKcal;
-    private float mealProteins;
-    private float mealCarbs;
-    private float mealFat;
-
-    static LocalDate currentDate = LocalDate.now();
-    static LocalDate date = currentDate;
-    static LocalDate endDate = currentDate.plusWeeks(2);
+    private MensaLocation mealLocation;
+
+    static volatile LocalDate currentDate = LocalDate.now();
+    static volatile LocalDate endDate = currentDate.plusWeeks(2);
+
+    // Days after the end date that are fetched ahead, so they are shown at once when the range moves
+    static int prefetchDays = Integer.getInteger("mensa.prefetchDays", 1);
     static DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
     static DecimalFormat df = new DecimalFormat("#.##");
 
-    public static List<MensaData> mealDataList = new ArrayList<>();
-    public static List<MensaData> selectedMealList = new ArrayList<>();
+    public static MensaMealStore mealStore = new MensaMealStore();
+    public static MensaHistory selectedMealList = new MensaHistory();
+
+    // The mensa locations whose meal plans are fetched
+    static List<MensaLocation> locations = locationsFromSystemProperty();
+
+    // Days whose meals are currently being fetched in the background
+    static Set<MensaDay> pendingDays = ConcurrentHashMap.newKeySet();
+
+    // Days whose last fetch has failed
+    static Set<MensaDay> failedDays = ConcurrentHashMap.newKeySet();
+
+    // Listeners notified of every change of the meal plan and the history
+    static List<MensaDataListener> listeners = new CopyOnWriteArrayList<>();
+
+    // The meal types counted as veggie by the overview
+    static final Set<MensaMealType> VEGGIE_TYPES = EnumSet.of(MensaMealType.VEGAN, MensaMealType.VEGETARIAN);
+
+    // Running totals of the selectedMealList for the overview
+    static MensaHistoryTotals historyTotals = new MensaHistoryTotals();
+
+    // Daily, weekly and monthly totals of the selectedMealList for the overview
+    static MensaHistoryRollups historyRollups = new MensaHistoryRollups();
+
+    // Numeric columns of the selectedMealList for aggregations
+    static MensaHistoryColumns historyColumns = new MensaHistoryColumns();
+
+    // The history snapshot is kept in the binary format with -Dmensa.historyFormat=binary
+    static MensaHistoryJournal historyJournal = new MensaHistoryJournal(
+            new File("binary".equals(System.getProperty("mensa.historyFormat")) ? "data/selectedMealList.bin"
+                    : "data/selectedMealList.txt"),
+            new File("data/selectedMealList.journal"), selectedMealList);
+
+    static MensaPlanCache planCache = new MensaPlanCache(new File("data/cache"));
+
+    static MensaFetchEngine fetchEngine = new MensaFetchEngine(MensaMealSource.fromSystemProperty());
+
+    // Full-text index over the dishes of the meal plan and the history
+    static MensaSearchIndex searchIndex = new MensaSearchIndex();
+
+    // Moves the date range at midnight and keeps the meal plan up to date
+    static MensaRefreshService refreshService = new MensaRefreshService();
 
     /**
      * Constructs a new {@code MensaData} object with the specified meal
-     * information.
+     * information, offered at the Adenauerring mensa.
      *
      * @param mealDate     the date of the meal
      * @param mealName     the name of the meal
@@ -52,14 +128,45 @@ public class MensaData {
      */
     public MensaData(String mealDate, String mealName, float mealPrice, MensaMealType mealType,
             float mealKcal, float mealProteins, float mealCarbs, float mealFat) {
-        this.mealDate = mealDate;
-        this.mealName = mealName;
+        this.mealDate = catalog.internDate(mealDate);
+        this.dish = catalog.intern(mealName, mealType, mealKcal, mealProteins, mealCarbs, mealFat);
         this.mealPrice = mealPrice;
-        this.mealType = mealType;
-        this.mealKcal = mealKcal;
-        this.mealProteins = mealProteins;
-        this.mealCarbs = mealCarbs;
-        this.mealFat = mealFat;
+        this.mealLocation = MensaLocation.ADENAUERRING;
+    }
+
+    /**
+     * Constructs a new {@code MensaData} object with the specified meal
+     * information.
+     *
+     * @param mealDate     the date of the meal
+     * @param mealName     the name of the meal
+     * @param mealPrice    the price of the meal
+     * @param mealType     the type of the meal
+     * @param mealKcal     the number of calories in the meal
+     * @param mealProteins the amount of proteins in the meal
+     * @param mealCarbs    the amount of carbohydrates in the meal
+     * @param mealFat      the amount of fat in the meal
+     * @param mealLocation the mensa location offering the meal
+     */
+    public MensaData(String mealDate, String mealName, float mealPrice, MensaMealType mealType,
+            float mealKcal, float mealProteins, float mealCarbs, float mealFat, MensaLocation mealLocation) {
+        this(mealDate, mealName, mealPrice, mealType, mealKcal, mealProteins, mealCarbs, mealFat);
+        this.mealLocation = mealLocation;
+    }
+
+    /**
+     * Constructs a new {@code MensaData} object for a dish of the catalog.
+     *
+     * @param mealDate     the date of the meal
+     * @param dish         the dish
+     * @param mealPrice    the price of the meal
+     * @param mealLocation the mensa location offering the meal
+     */
+    public MensaData(String mealDate, MensaDish dish, float mealPrice, MensaLocation mealLocation) {
+        this.mealDate = catalog.internDate(mealDate);
+        this.dish = dish;
+        this.mealPrice = mealPrice;
+        this.mealLocation = mealLocation;
     }
 
     /**
@@ -71,48 +178,370 @@ public class MensaData {
     public String toString() {
         return "MealData{" +
                 "mealDate='" + mealDate + '\'' +
-                ", mealName='" + mealName + '\'' +
+                ", mealName='" + getMealName() + '\'' +
                 ", mealPrice=" + mealPrice +
-                ", mealType=" + mealType +
-                ", mealKcal=" + mealKcal +
-                ", mealProteins=" + mealProteins +
-                ", mealCarbs=" + mealCarbs +
-                ", mealFat=" + mealFat +
+                ", mealType=" + getMealType() +
+                ", mealKcal=" + getMealKcal() +
+                ", mealProteins=" + getMealProteins() +
+                ", mealCarbs=" + getMealCarbs() +
+                ", mealFat=" + getMealFat() +
+                ", mealLocation=" + mealLocation +
                 '}';
     }
 
+    /**
+     * Returns whether the meal is vegan or vegetarian.
+     *
+     * @return {@code true} if the meal type is one of the VEGGIE_TYPES
+     */
+    public boolean isVeggie() {
+        return VEGGIE_TYPES.contains(dish.getType());
+    }
+
+    /**
+     * Returns the meal as a line in the format of
+     * {@code data/selectedMealList.txt}, without the line break. The name is
+     * quoted if it contains a semicolon, a double quote or a line break.
+     *
+     * @return the semicolon separated meal data
+     */
+    public String toCsvLine() {
+        return mealDate + ";" + MensaCsvReader.quote(dish.getName()) + ";" + mealPrice + ";"
+                + dish.getType().toString() + ";" + dish.getKcal() + ";" + dish.getProteins() + ";"
+                + dish.getCarbs() + ";" + dish.getFat() + ";" + mealLocation.name();
+    }
+
+    /**
+     * Parses a line in the format of {@code data/selectedMealList.txt}.
+     * Lines written before the location was added have eight fields, their
+     * meals are offered at the Adenauerring mensa. Files are read faster with a
+     * {@code MensaCsvReader}.
+     *
+     * @param line the semicolon separated meal data
+     * @return the parsed meal
+     * @throws IllegalArgumentException if the line does not have eight or nine
+     *                                  fields or a field cannot be parsed
+     */
+    public static MensaData fromCsvLine(String line) {
+        return MensaCsvReader.parseLine(line);
+    }
+
     /**
      * Fetches the meal data from the library.
-     * It uses the KITMensaScraper library to fetch meals for a specific location
-     * and date range.
-     * The fetched meals are stored in the mealDataList.
+     * Days of the date range that are not stored yet are served from the
+     * {@code MensaPlanCache}, only days that are not cached or expired are
+     * fetched concurrently for all locations with the {@code MensaFetchEngine}
+     * and written back to the cache.
+     * The fetched meals are stored in the mealStore.
+     * Calling it again only fetches the days that have expired since.
      */
     public static void fetchLibrary() {
-        final KITMensaScraper mensa = new KITMensaScraper();
-
-        while (date.isBefore(endDate)) {
-            final List<MensaMeal> meals = mensa.fetchMeals(MensaLocation.ADENAUERRING, date);
-            if (!meals.isEmpty()) {
-                for (MensaMeal meal : meals) {
-                    String mealDate = date.toString();
-                    String mealName = meal.getName();
-                    float mealPrice = meal.getPrice();
-                    MensaMealType mealType = meal.getType();
-                    float mealKcal = meal.getKcal();
-                    float mealProteins = meal.getProteins();
-                    float mealCarbs = meal.getCarbs();
-                    float mealFat = meal.getFat();
-
-                    MensaData mealData = new MensaData(mealDate, mealName, mealPrice, mealType,
-                            mealKcal, mealProteins, mealCarbs, mealFat);
-
-                    mealDataList.add(mealData);
+        fetchLibrary(false);
+    }
+
+    /**
+     * Fetches the meal data from the library like {@link #fetchLibrary()}.
+     * If {@code refresh} is set, every day of the date range is fetched again
+     * regardless of its expiry.
+     * Each fetched day replaces the stored meals of that day as a whole, days
+     * that could not be fetched keep their previous meals.
+     *
+     * @param refresh whether to refetch all days
+     * @return the result of the fetch
+     */
+    public static MensaFetchEngine.Result fetchLibrary(boolean refresh) {
+        List<MensaDay> days = daysToFetch(refresh);
+
+        MensaFetchEngine.Result result = fetchEngine.fetch(days);
+        for (Map.Entry<MensaDay, List<MensaData>> day : result.getMeals().entrySet()) {
+            planCache.put(day.getKey().getLocation(), day.getKey().getDate(), day.getValue());
+            addDay(day.getKey(), day.getValue());
+        }
+        for (MensaDay day : result.getFailedDays()) {
+            markFailed(day);
+        }
+        printFetchResult(result, days.size());
+        return result;
+    }
+
+    /**
+     * Determines the days of the date range and the {@code prefetchDays} after
+     * it that have to be fetched for all locations.
+     * Days that are not stored yet are loaded from the {@code MensaPlanCache}
+     * first and announced to the listeners, so they can be shown even if they
+     * are about to be refetched. Days that are currently being fetched are
+     * skipped. Reads the cache on the calling thread; the
+     * {@code MensaPlanLoader} reads it in the background instead.
+     *
+     * @param refresh whether to return every day regardless of its expiry
+     * @return the days that are missing or expired, in ascending order
+     */
+    static List<MensaDay> daysToFetch(boolean refresh) {
+        LocalDate today = LocalDate.now();
+        List<MensaDay> days = new ArrayList<>();
+
+        for (MensaDay day : daysToLoad(refresh)) {
+            if (!mealStore.containsDay(day.getLocation(), day.getDate())) {
+                MensaPlanCache.Entry entry = planCache.get(day.getLocation(), day.getDate());
+                if (entry != null) {
+                    boolean fetch = refresh || entry.isStale(today);
+                    addCachedDay(day, entry, fetch);
+                    if (!fetch) {
+                        continue; // Served from the cache
+                    }
                 }
             }
-            date = date.plusDays(1);
+            days.add(day);
+        }
+        return days;
+    }
+
+    /**
+     * Determines the days of the date range and the {@code prefetchDays} after
+     * it that are not stored, or whose stored meals have expired, for all
+     * locations. Days that are not stored may still be found in the
+     * {@code MensaPlanCache}, which is not read here. Days that are currently
+     * being fetched are skipped. Only looks at the meals in memory, so it can
+     * be called on the event dispatch thread.
+     *
+     * @param refresh whether to return every day regardless of its expiry
+     * @return the days to load, in ascending order
+     */
+    static List<MensaDay> daysToLoad(boolean refresh) {
+        LocalDate today = LocalDate.now();
+        List<MensaDay> days = new ArrayList<>();
+
+        for (LocalDate date : createFetchDateList()) {
+            for (MensaLocation location : locations) {
+                MensaDay day = new MensaDay(location, date);
+                if (pendingDays.contains(day)) {
+                    continue; // Already being fetched
+                }
+                if (refresh || !mealStore.containsDay(location, date)
+                        || MensaPlanCache.isStale(date, mealStore.getFetchedAt(location, date), today)) {
+                    days.add(day);
+                }
+            }
+        }
+        return days;
+    }
+
+    /**
+     * Stores the meals of a day read from the {@code MensaPlanCache} with the
+     * time they were fetched and notifies the listeners. A day that is stored
+     * meanwhile or has left the date range is not replaced.
+     *
+     * @param day      the location and date
+     * @param entry    the cached plan of the day
+     * @param fetching whether the day is still being fetched; otherwise it is
+     *                 no longer pending
+     */
+    static void addCachedDay(MensaDay day, MensaPlanCache.Entry entry, boolean fetching) {
+        if (!fetching) {
+            pendingDays.remove(day);
+        }
+        if (day.getDate().isBefore(currentDate) || mealStore.containsDay(day.getLocation(), day.getDate())) {
+            return;
+        }
+        mealStore.putDay(day.getLocation(), day.getDate(), entry.getMeals(), entry.getFetchedAt());
+        for (MensaDataListener listener : listeners) {
+            listener.dayLoaded(day);
         }
     }
 
+    /**
+     * Stores the fetched meals of a day in the mealStore, replacing the meals
+     * previously stored for that day, marks the day as no longer pending and
+     * notifies the listeners. A day that has left the date range while it was
+     * being fetched is dropped.
+     *
+     * @param day   the fetched location and date
+     * @param meals the meals of that day
+     */
+    static void addDay(MensaDay day, List<MensaData> meals) {
+        if (day.getDate().isBefore(currentDate)) {
+            pendingDays.remove(day);
+            return; // The range has moved past this day
+        }
+        mealStore.putDay(day.getLocation(), day.getDate(), meals); // Replaces a previously stored plan
+        pendingDays.remove(day);
+        failedDays.remove(day);
+        for (MensaDataListener listener : listeners) {
+            listener.dayLoaded(day);
+        }
+    }
+
+    /**
+     * Moves the date range to start at the given date, keeping its length.
+     * The meals, failures and cached plans of the days before the new start
+     * are removed, then the listeners are notified. Must be called on the event dispatch
+     * thread.
+     *
+     * @param start the first date of the new range
+     */
+    static void moveWindow(LocalDate start) {
+        long length = ChronoUnit.DAYS.between(currentDate, endDate);
+        endDate = start.plusDays(length); // Set first, so whoever sees the new start sees the new end too
+        currentDate = start;
+        mealStore.removeDaysBefore(start);
+        failedDays.removeIf(day -> day.getDate().isBefore(start));
+        planCache.removeBefore(start);
+        for (MensaDataListener listener : listeners) {
+            listener.windowMoved(currentDate, endDate);
+        }
+    }
+
+    /**
+     * Marks a day as being fetched and notifies the listeners.
+     *
+     * @param day the location and date that is being fetched
+     */
+    static void markPending(MensaDay day) {
+        pendingDays.add(day);
+        for (MensaDataListener listener : listeners) {
+            listener.dayStateChanged(day);
+        }
+    }
+
+    /**
+     * Marks a day whose fetch has failed and notifies the listeners. The meals
+     * stored for the day, if any, are kept.
+     *
+     * @param day the location and date that could not be fetched
+     */
+    static void markFailed(MensaDay day) {
+        pendingDays.remove(day);
+        failedDays.add(day);
+        for (MensaDataListener listener : listeners) {
+            listener.dayStateChanged(day);
+        }
+    }
+
+    /**
+     * Registers a listener that is notified of every change of the meal plan
+     * and the history.
+     *
+     * @param listener the listener
+     */
+    public static void addListener(MensaDataListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a registered listener.
+     *
+     * @param listener the listener
+     */
+    public static void removeListener(MensaDataListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns whether the meals of a day are still being fetched.
+     *
+     * @param location the mensa location
+     * @param date     the date to check
+     * @return {@code true} if the day is still being fetched
+     */
+    public static boolean isPending(MensaLocation location, LocalDate date) {
+        return pendingDays.contains(new MensaDay(location, date));
+    }
+
+    /**
+     * Returns whether the last attempt to fetch a day has failed.
+     *
+     * @param location the mensa location
+     * @param date     the date to check
+     * @return {@code true} if the day could not be fetched
+     */
+    public static boolean isFailed(MensaLocation location, LocalDate date) {
+        return failedDays.contains(new MensaDay(location, date));
+    }
+
+    /**
+     * Reads the mensa locations to fetch from the system property
+     * {@code mensa.locations}, a comma separated list of {@code MensaLocation}
+     * names. All locations are fetched if the property is not set.
+     *
+     * @return the locations to fetch
+     */
+    static List<MensaLocation> locationsFromSystemProperty() {
+        String property = System.getProperty("mensa.locations");
+        if (property == null || property.isBlank()) {
+            return List.of(MensaLocation.values());
+        }
+        List<MensaLocation> locations = new ArrayList<>();
+        for (String name : property.split(",")) {
+            locations.add(MensaLocation.valueOf(name.trim()));
+        }
+        return locations;
+    }
+
+    /**
+     * Adds a meal as a new entry to the selectedMealList, the historyColumns,
+     * the historyTotals and the historyRollups, appends the change to the
+     * historyJournal and notifies the listeners.
+     *
+     * @param meal the selected meal
+     * @return the id of the new entry
+     */
+    public static int addSelectedMeal(MensaData meal) {
+        int id;
+        int index;
+        synchronized (selectedMealList) {
+            id = selectedMealList.addEntry(meal);
+            index = selectedMealList.indexOfId(id);
+            historyColumns.add(meal, id);
+            historyTotals.add(meal);
+            historyRollups.add(meal);
+            historyJournal.added(meal);
+        }
+        for (MensaDataListener listener : listeners) {
+            listener.mealAdded(id, meal, index);
+        }
+        return id;
+    }
+
+    /**
+     * Removes an entry from the selectedMealList, the historyColumns, the
+     * historyTotals and the historyRollups, appends the change to the
+     * historyJournal and notifies the listeners.
+     *
+     * @param id the id of the entry to remove
+     * @return the removed meal, or {@code null} if there is no entry with the id
+     */
+    public static MensaData removeSelectedEntry(int id) {
+        MensaData meal;
+        int index;
+        synchronized (selectedMealList) {
+            index = selectedMealList.indexOfId(id);
+            if (index == -1) {
+                return null;
+            }
+            meal = selectedMealList.removeById(id);
+            historyColumns.remove(id);
+            historyTotals.remove(meal);
+            historyRollups.remove(meal);
+            historyJournal.removed(meal);
+        }
+        for (MensaDataListener listener : listeners) {
+            listener.mealRemoved(id, meal, index);
+        }
+        return meal;
+    }
+
+    /**
+     * Prints a summary of a fetch to the console.
+     *
+     * @param result    the result of the fetch
+     * @param requested the number of requested days
+     */
+    static void printFetchResult(MensaFetchEngine.Result result, int requested) {
+        System.out.println("Speiseplan geladen: " + result.getMeals().size() + " von " + requested
+                + " Tagen in " + result.getElapsedMillis() + " ms"
+                + (result.getRetries() > 0 ? ", " + result.getRetries() + " Wiederholungen" : ""));
+    }
+
     /**
      * Creates a list of dates from the current date up to the end date.
      *
@@ -121,13 +550,26 @@ public class MensaData {
     public static List<LocalDate> createDateList() {
         List<LocalDate> dates = new ArrayList<>();
 
-        while (currentDate.isBefore(endDate)) {
-            dates.add(currentDate);
-            currentDate = currentDate.plusDays(1);
+        for (LocalDate day = currentDate; day.isBefore(endDate); day = day.plusDays(1)) {
+            dates.add(day);
         }
 
         return dates;
     }
+
+    /**
+     * Creates a list of the dates to fetch: the dates from the current date up
+     * to the end date followed by the {@code prefetchDays} after it.
+     *
+     * @return a list of LocalDate objects representing the dates
+     */
+    static List<LocalDate> createFetchDateList() {
+        List<LocalDate> dates = createDateList();
+        for (int i = 0; i < prefetchDays; i++) {
+            dates.add(endDate.plusDays(i));
+        }
+        return dates;
+    }
     
   // Getters and setters for the class properties
 
@@ -136,15 +578,26 @@ public class MensaData {
     }
 
     public void setMealDate(String mealDate) {
-        this.mealDate = mealDate;
+        this.mealDate = catalog.internDate(mealDate);
+    }
+
+    public MensaDish getDish() {
+        return dish;
     }
 
+    public void setDish(MensaDish dish) {
+        this.dish = dish;
+    }
+
+    // The dish is shared, so changing one of its values switches to another dish
+
     public String getMealName() {
-        return mealName;
+        return dish.getName();
     }
 
     public void setMealName(String mealName) {
-        this.mealName = mealName;
+        this.dish = catalog.intern(mealName, dish.getType(), dish.getKcal(), dish.getProteins(), dish.getCarbs(),
+                dish.getFat());
     }
 
     public float getMealPrice() {
@@ -156,59 +609,64 @@ public class MensaData {
     }
 
     public MensaMealType getMealType() {
-        return mealType;
+        return dish.getType();
     }
 
     public void setMealType(MensaMealType mealType) {
-        this.mealType = mealType;
+        this.dish = catalog.intern(dish.getName(), mealType, dish.getKcal(), dish.getProteins(), dish.getCarbs(),
+                dish.getFat());
     }
 
     public float getMealKcal() {
-        return mealKcal;
+        return dish.getKcal();
     }
 
     public void setMealKcal(float mealKcal) {
-        this.mealKcal = mealKcal;
+        this.dish = catalog.intern(dish.getName(), dish.getType(), mealKcal, dish.getProteins(), dish.getCarbs(),
+                dish.getFat());
     }
 
     public float getMealProteins() {
-        return mealProteins;
+        return dish.getProteins();
     }
 
     public void setMealProteins(float mealProteins) {
-        this.mealProteins = mealProteins;
+        this.dish = catalog.intern(dish.getName(), dish.getType(), dish.getKcal(), mealProteins, dish.getCarbs(),
+                dish.getFat());
     }
 
     public float getMealCarbs() {
-        return mealCarbs;
+        return dish.getCarbs();
     }
 
     public void setMealCarbs(float mealCarbs) {
-        this.mealCarbs = mealCarbs;
+        this.dish = catalog.intern(dish.getName(), dish.getType(), dish.getKcal(), dish.getProteins(), mealCarbs,
+                dish.getFat());
     }
 
     public float getMealFat() {
-        return mealFat;
+        return dish.getFat();
     }
 
     public void setMealFat(float mealFat) {
-        this.mealFat = mealFat;
+        this.dish = catalog.intern(dish.getName(), dish.getType(), dish.getKcal(), dish.getProteins(),
+                dish.getCarbs(), mealFat);
     }
 
-    public static LocalDate getCurrentDate() {
-        return currentDate;
+    public MensaLocation getMealLocation() {
+        return mealLocation;
     }
 
-    public static void setCurrentDate(LocalDate currentDate) {
-        MensaData.currentDate = currentDate;
+    public void setMealLocation(MensaLocation mealLocation) {
+        this.mealLocation = mealLocation;
     }
 
-    public static LocalDate getDate() {
-        return date;
+    public static LocalDate getCurrentDate() {
+        return currentDate;
     }
 
-    public static void setDate(LocalDate date) {
-        MensaData.date = date;
+    public static void setCurrentDate(LocalDate currentDate) {
+        MensaData.currentDate = currentDate;
     }
 
     public static LocalDate getEndDate() {
@@ -227,19 +685,115 @@ public class MensaData {
         MensaData.formatter = formatter;
     }
 
-    public static List<MensaData> getMealDataList() {
-        return mealDataList;
+    public static List<MensaLocation> getLocations() {
+        return locations;
+    }
+
+    public static void setLocations(List<MensaLocation> locations) {
+        MensaData.locations = locations;
+    }
+
+    public static MensaDishCatalog getCatalog() {
+        return catalog;
+    }
+
+    public static void setCatalog(MensaDishCatalog catalog) {
+        MensaData.catalog = catalog;
+    }
+
+    public static MensaMealStore getMealStore() {
+        return mealStore;
+    }
+
+    public static void setMealStore(MensaMealStore mealStore) {
+        MensaData.mealStore = mealStore;
+    }
+
+    public static MensaHistoryTotals getHistoryTotals() {
+        return historyTotals;
+    }
+
+    public static void setHistoryTotals(MensaHistoryTotals historyTotals) {
+        MensaData.historyTotals = historyTotals;
+    }
+
+    public static List<MensaDataListener> getListeners() {
+        return listeners;
+    }
+
+    public static void setListeners(List<MensaDataListener> listeners) {
+        MensaData.listeners = listeners;
+    }
+
+    public static MensaHistoryRollups getHistoryRollups() {
+        return historyRollups;
+    }
+
+    public static void setHistoryRollups(MensaHistoryRollups historyRollups) {
+        MensaData.historyRollups = historyRollups;
+    }
+
+    public static MensaHistoryColumns getHistoryColumns() {
+        return historyColumns;
+    }
+
+    public static void setHistoryColumns(MensaHistoryColumns historyColumns) {
+        MensaData.historyColumns = historyColumns;
+    }
+
+    public static MensaHistoryJournal getHistoryJournal() {
+        return historyJournal;
+    }
+
+    public static void setHistoryJournal(MensaHistoryJournal historyJournal) {
+        MensaData.historyJournal = historyJournal;
+    }
+
+    public static MensaPlanCache getPlanCache() {
+        return planCache;
+    }
+
+    public static void setPlanCache(MensaPlanCache planCache) {
+        MensaData.planCache = planCache;
+    }
+
+    public static MensaSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    public static void setSearchIndex(MensaSearchIndex searchIndex) {
+        MensaData.searchIndex = searchIndex;
+    }
+
+    public static int getPrefetchDays() {
+        return prefetchDays;
+    }
+
+    public static void setPrefetchDays(int prefetchDays) {
+        MensaData.prefetchDays = prefetchDays;
+    }
+
+    public static MensaRefreshService getRefreshService() {
+        return refreshService;
+    }
+
+    public static void setRefreshService(MensaRefreshService refreshService) {
+        MensaData.refreshService = refreshService;
+    }
+
+    public static MensaFetchEngine getFetchEngine() {
+        return fetchEngine;
     }
 
-    public static void setMealDataList(List<MensaData> mealDataList) {
-        MensaData.mealDataList = mealDataList;
+    public static void setFetchEngine(MensaFetchEngine fetchEngine) {
+        MensaData.fetchEngine = fetchEngine;
     }
 
-    public static List<MensaData> getSelectedMealList() {
+    public static MensaHistory getSelectedMealList() {
         return selectedMealList;
     }
 
-    public static void setSelectedMealList(List<MensaData> selectedMealList) {
+    public static void setSelectedMealList(MensaHistory selectedMealList) {
         MensaData.selectedMealList = selectedMealList;
     }
 
@@ -0,0 +1,66 @@
+package pack;
+
+import java.time.LocalDate;
+
+/**
+ * The {@code MensaDataListener} interface is notified of changes of the meal
+ * plan and the meal history held by {@code MensaData}. Every event describes a
+ * single change, so a view can update just the affected rows instead of
+ * reading all data again.
+ * <p>
+ * Listeners are registered with {@code MensaData.addListener} and are called
+ * on the thread that made the change after the change is complete. All
+ * changes made by the GUI and the {@code MensaPlanLoader} happen on the Event
+ * Dispatch Thread.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public interface MensaDataListener {
+
+    /**
+     * Called after a meal has been added to the history.
+     *
+     * @param id    the id of the new entry
+     * @param meal  the added meal
+     * @param index the position of the entry in the history
+     */
+    default void mealAdded(int id, MensaData meal, int index) {
+    }
+
+    /**
+     * Called after a meal has been removed from the history.
+     *
+     * @param id    the id of the removed entry
+     * @param meal  the removed meal
+     * @param index the position the entry had in the history
+     */
+    default void mealRemoved(int id, MensaData meal, int index) {
+    }
+
+    /**
+     * Called after the meals of a day have been stored.
+     *
+     * @param day the location and date whose meals have been stored
+     */
+    default void dayLoaded(MensaDay day) {
+    }
+
+    /**
+     * Called after a day has started loading or its loading has failed.
+     *
+     * @param day the location and date whose loading state has changed
+     */
+    default void dayStateChanged(MensaDay day) {
+    }
+
+    /**
+     * Called after the date range of the meal plan has moved, usually because
+     * a new day has begun. The days before the new start have been removed.
+     *
+     * @param start the first date of the range
+     * @param end   the date after the last date of the range
+     */
+    default void windowMoved(LocalDate start, LocalDate end) {
+    }
+}
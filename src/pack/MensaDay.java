@@ -0,0 +1,70 @@
+package pack;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Objects;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaLocation;
+
+/**
+ * The {@code MensaDay} class identifies the meal plan of one mensa location on
+ * one date. It is used as the key of fetch requests and their results.
+ * {@code MensaDay} objects are ordered by date first and location second.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public final class MensaDay implements Comparable<MensaDay> {
+
+    private static final Comparator<MensaDay> ORDER = Comparator.comparing(MensaDay::getDate)
+            .thenComparing(MensaDay::getLocation);
+
+    private final MensaLocation location;
+    private final LocalDate date;
+
+    /**
+     * Constructs a new {@code MensaDay}.
+     *
+     * @param location the mensa location
+     * @param date     the date
+     */
+    public MensaDay(MensaLocation location, LocalDate date) {
+        this.location = Objects.requireNonNull(location);
+        this.date = Objects.requireNonNull(date);
+    }
+
+    @Override
+    public int compareTo(MensaDay other) {
+        return ORDER.compare(this, other);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MensaDay)) {
+            return false;
+        }
+        MensaDay other = (MensaDay) o;
+        return location == other.location && date.equals(other.date);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * location.hashCode() + date.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return location + " " + date;
+    }
+
+    public MensaLocation getLocation() {
+        return location;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+}
@@ -0,0 +1,102 @@
+package pack;
+
+import java.util.Objects;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaMealType;
+
+/**
+ * The {@code MensaDish} class describes a dish independent of the day and the
+ * mensa it is offered at: its name, type and nutrients. Dishes are created by
+ * the {@code MensaDishCatalog} only, which keeps a single instance per dish, so
+ * every {@code MensaData} offering the same dish shares it.
+ * <p>
+ * Two dishes are equal if their name, type and nutrients are equal; the id is
+ * not compared.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public final class MensaDish {
+
+    private final int id;
+    private final String name;
+    private final MensaMealType type;
+    private final float kcal;
+    private final float proteins;
+    private final float carbs;
+    private final float fat;
+
+    /**
+     * Constructs a new {@code MensaDish}. Use {@code MensaDishCatalog.intern}
+     * to get the shared instance of a dish.
+     *
+     * @param id       the id of the dish in its catalog
+     * @param name     the name of the dish
+     * @param type     the type of the dish
+     * @param kcal     the number of calories
+     * @param proteins the amount of proteins
+     * @param carbs    the amount of carbohydrates
+     * @param fat      the amount of fat
+     */
+    MensaDish(int id, String name, MensaMealType type, float kcal, float proteins, float carbs, float fat) {
+        this.id = id;
+        this.name = name;
+        this.type = type;
+        this.kcal = kcal;
+        this.proteins = proteins;
+        this.carbs = carbs;
+        this.fat = fat;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MensaDish)) {
+            return false;
+        }
+        MensaDish other = (MensaDish) o;
+        return name.equals(other.name) && type == other.type && Float.compare(kcal, other.kcal) == 0
+                && Float.compare(proteins, other.proteins) == 0 && Float.compare(carbs, other.carbs) == 0
+                && Float.compare(fat, other.fat) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, type, kcal, proteins, carbs, fat);
+    }
+
+    @Override
+    public String toString() {
+        return "MensaDish{" + id + ", " + name + ", " + type + "}";
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public MensaMealType getType() {
+        return type;
+    }
+
+    public float getKcal() {
+        return kcal;
+    }
+
+    public float getProteins() {
+        return proteins;
+    }
+
+    public float getCarbs() {
+        return carbs;
+    }
+
+    public float getFat() {
+        return fat;
+    }
+}
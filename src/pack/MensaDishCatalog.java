@@ -0,0 +1,92 @@
+package pack;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaMealType;
+
+/**
+ * The {@code MensaDishCatalog} class keeps every dish and every date string
+ * only once. The same dishes are offered week after week and every meal of a
+ * day carries the same date, so a history or a meal plan built from interned
+ * values holds each name and each date a single time instead of once per
+ * meal.
+ * <p>
+ * Every dish gets an id in the order it is first interned. Ids are only valid
+ * while the application runs; files refer to dishes by their own ids. The
+ * catalog is thread-safe; looking up a known dish or date does not lock.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaDishCatalog {
+
+    private final Map<MensaDish, MensaDish> dishes = new ConcurrentHashMap<>();
+    private final List<MensaDish> dishesById = new ArrayList<>();
+    private final Map<String, String> dates = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the shared instance of a dish, adding it if it is not known yet.
+     *
+     * @param name     the name of the dish
+     * @param type     the type of the dish
+     * @param kcal     the number of calories
+     * @param proteins the amount of proteins
+     * @param carbs    the amount of carbohydrates
+     * @param fat      the amount of fat
+     * @return the dish
+     */
+    public MensaDish intern(String name, MensaMealType type, float kcal, float proteins, float carbs, float fat) {
+        MensaDish probe = new MensaDish(-1, name, type, kcal, proteins, carbs, fat);
+        MensaDish dish = dishes.get(probe);
+        if (dish != null) {
+            return dish;
+        }
+        synchronized (this) {
+            dish = dishes.get(probe);
+            if (dish == null) {
+                dish = new MensaDish(dishesById.size(), name, type, kcal, proteins, carbs, fat);
+                dishesById.add(dish);
+                dishes.put(dish, dish);
+            }
+            return dish;
+        }
+    }
+
+    /**
+     * Returns a dish by its id.
+     *
+     * @param id the id of the dish
+     * @return the dish
+     * @throws IndexOutOfBoundsException if there is no dish with that id
+     */
+    public synchronized MensaDish get(int id) {
+        return dishesById.get(id);
+    }
+
+    /**
+     * Returns the shared instance of a date string.
+     *
+     * @param date the date
+     * @return an equal string that is shared by all meals of that date
+     */
+    public String internDate(String date) {
+        String shared = dates.get(date); // Does not lock, unlike putIfAbsent
+        if (shared != null) {
+            return shared;
+        }
+        shared = dates.putIfAbsent(date, date);
+        return shared == null ? date : shared;
+    }
+
+    /**
+     * Returns the number of known dishes.
+     *
+     * @return the number of dishes
+     */
+    public int size() {
+        return dishes.size();
+    }
+}
@@ -0,0 +1,405 @@
+package pack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaLocation;
+
+/**
+ * The {@code MensaFetchEngine} class fetches the meals of several days and
+ * locations concurrently from a {@link MensaMealSource}.
+ * All requests are sent at once to a bounded thread pool, every request has its
+ * own timeout and failed or timed out days do not prevent the other days from
+ * being returned.
+ * <p>
+ * A failed or timed out request is retried after an exponential backoff with
+ * full jitter: the n-th retry waits a random time up to
+ * {@code backoff * 2^(n-1)}, capped at {@code maxBackoff}, so the retries of
+ * many days do not hit the site at the same moment. Waiting requests do not
+ * occupy a thread. Each mensa location has a {@link MensaCircuitBreaker}: once
+ * the requests to a location keep failing, further requests to it fail at once
+ * instead of waiting for their timeouts. All requests, retries included, pass
+ * a global {@link MensaRateLimiter}.
+ * <p>
+ * The pool size can be set with {@code -Dmensa.fetchThreads} (default eight per
+ * mensa location, so fetching all locations takes about as long as fetching
+ * one), the timeout per request in milliseconds with
+ * {@code -Dmensa.fetchTimeout} (default 15000), the number of retries with
+ * {@code -Dmensa.fetchRetries} (default 2), the backoff and its cap in
+ * milliseconds with {@code -Dmensa.fetchBackoff} (default 250) and
+ * {@code -Dmensa.fetchMaxBackoff} (default 4000), the failures in a row that
+ * open a breaker with {@code -Dmensa.breakerThreshold} (default 5), how long it
+ * stays open in milliseconds with {@code -Dmensa.breakerOpenTime} (default
+ * 30000) and the requests per second with {@code -Dmensa.fetchRate} (default
+ * 50, in bursts of up to the pool size).
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaFetchEngine {
+
+    private final MensaMealSource source;
+    private final long timeoutMillis;
+    private final int retries;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+    private final Map<MensaLocation, MensaCircuitBreaker> breakers = new EnumMap<>(MensaLocation.class);
+    private final MensaRateLimiter rateLimiter;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timeoutTimer;
+
+    /**
+     * Constructs a new {@code MensaFetchEngine} with all settings taken from
+     * the system properties.
+     *
+     * @param source the source to fetch the meals from
+     */
+    public MensaFetchEngine(MensaMealSource source) {
+        this(source, Integer.getInteger("mensa.fetchThreads", 8 * MensaLocation.values().length),
+                Long.getLong("mensa.fetchTimeout", 15000));
+    }
+
+    /**
+     * Constructs a new {@code MensaFetchEngine} with the retry, breaker and
+     * rate settings taken from the system properties.
+     *
+     * @param source        the source to fetch the meals from
+     * @param threads       the maximum number of concurrent requests
+     * @param timeoutMillis the timeout of a single request in milliseconds,
+     *                      measured from the moment the request is started
+     */
+    public MensaFetchEngine(MensaMealSource source, int threads, long timeoutMillis) {
+        this(source, threads, timeoutMillis, Integer.getInteger("mensa.fetchRetries", 2),
+                Long.getLong("mensa.fetchBackoff", 250), Long.getLong("mensa.fetchMaxBackoff", 4000),
+                new MensaRateLimiter(Double.parseDouble(System.getProperty("mensa.fetchRate", "50")), threads),
+                Integer.getInteger("mensa.breakerThreshold", 5), Long.getLong("mensa.breakerOpenTime", 30000));
+    }
+
+    /**
+     * Constructs a new {@code MensaFetchEngine}.
+     *
+     * @param source           the source to fetch the meals from
+     * @param threads          the maximum number of concurrent requests
+     * @param timeoutMillis    the timeout of a single request in milliseconds,
+     *                         measured from the moment the request is started
+     * @param retries          how often a failed request is repeated
+     * @param backoffMillis    the maximum wait before the first retry
+     * @param maxBackoffMillis the maximum wait before any retry
+     * @param rateLimiter      the limit of requests per second
+     * @param breakerThreshold the failures in a row that open the breaker of a
+     *                         location
+     * @param breakerOpenMillis how long an open breaker rejects requests
+     */
+    public MensaFetchEngine(MensaMealSource source, int threads, long timeoutMillis, int retries,
+            long backoffMillis, long maxBackoffMillis, MensaRateLimiter rateLimiter, int breakerThreshold,
+            long breakerOpenMillis) {
+        this.source = source;
+        this.timeoutMillis = timeoutMillis;
+        this.retries = retries;
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.rateLimiter = rateLimiter;
+        for (MensaLocation location : MensaLocation.values()) {
+            breakers.put(location, new MensaCircuitBreaker(breakerThreshold, breakerOpenMillis));
+        }
+        this.executor = Executors.newFixedThreadPool(threads, daemonThreads("mensa-fetch-"));
+        this.timeoutTimer = Executors.newSingleThreadScheduledExecutor(daemonThreads("mensa-fetch-timeout-"));
+    }
+
+    /**
+     * Fetches the meals of all given days concurrently and waits until every
+     * request has either completed, failed or timed out.
+     *
+     * @param days the location and date pairs to fetch the meals for
+     * @return the result containing the meals in ascending order and the days
+     *         that could not be fetched
+     */
+    public Result fetch(List<MensaDay> days) {
+        return fetch(days, null);
+    }
+
+    /**
+     * Fetches the meals of all given days concurrently and waits until every
+     * request has either completed, failed or timed out. Each successfully
+     * fetched day is passed to the listener as soon as it arrives, so callers can
+     * show it before the slowest day is done.
+     *
+     * @param days     the location and date pairs to fetch the meals for
+     * @param listener the listener notified per fetched day from the fetch
+     *                 threads, may be {@code null}
+     * @return the result containing the meals in ascending order and the days
+     *         that could not be fetched
+     */
+    public Result fetch(List<MensaDay> days, DayListener listener) {
+        long start = System.nanoTime();
+
+        // Send all requests before waiting for the first one
+        List<Request> requests = new ArrayList<>(days.size());
+        for (MensaDay day : days) {
+            Request request = new Request(day);
+            if (listener != null) {
+                request.future.thenAccept(meals -> listener.dayFetched(day, meals));
+            }
+            schedule(request);
+            requests.add(request);
+        }
+
+        Result result = new Result();
+        for (Request request : requests) {
+            try {
+                result.meals.put(request.day, request.future.join());
+            } catch (CompletionException e) {
+                result.failedDays.add(request.day);
+                System.out.println("Abruf fehlgeschlagen für " + request.day + ": " + e.getCause());
+            }
+            result.dayMillis.put(request.day, TimeUnit.NANOSECONDS.toMillis(request.endNanos - request.startNanos));
+            result.retries += Math.max(request.attempts - 1, 0); // Rejected by the breaker without attempt
+        }
+        result.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Starts the next attempt of a request, or fails the request at once if the
+     * breaker of its location is open. The attempt waits for the rate limiter
+     * on the timer, not in a pool thread.
+     *
+     * @param request the request
+     */
+    private void schedule(Request request) {
+        if (!breakers.get(request.day.getLocation()).allowRequest()) {
+            request.fail(new IllegalStateException("Abrufe für " + request.day.getLocation()
+                    + " sind nach wiederholten Fehlern ausgesetzt"));
+            return;
+        }
+        long wait = rateLimiter.reserve();
+        if (wait == 0) {
+            executor.execute(() -> attempt(request));
+        } else {
+            timeoutTimer.schedule(() -> executor.execute(() -> attempt(request)), wait, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Runs one attempt of a request in a pool thread.
+     * The timeout starts when the attempt is actually executed, so queued
+     * requests are not penalized for the pool being busy. A timed out attempt
+     * keeps its thread until the source returns, its result is discarded.
+     *
+     * @param request the request
+     */
+    private void attempt(Request request) {
+        request.attempts++;
+        CompletableFuture<List<MensaData>> attempt = new CompletableFuture<>();
+        attempt.whenComplete((meals, failure) -> onAttemptDone(request, meals, failure));
+        ScheduledFuture<?> timeout = timeoutTimer.schedule(
+                () -> attempt.completeExceptionally(new TimeoutException("Zeitüberschreitung nach "
+                        + timeoutMillis + " ms")),
+                timeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            attempt.complete(source.fetchMeals(request.day.getLocation(), request.day.getDate()));
+        } catch (RuntimeException e) {
+            attempt.completeExceptionally(e);
+        } finally {
+            timeout.cancel(false);
+        }
+    }
+
+    /**
+     * Completes a request with the outcome of an attempt, or schedules a retry
+     * after the backoff if the attempt failed and retries are left.
+     *
+     * @param request the request
+     * @param meals   the fetched meals, {@code null} if the attempt failed
+     * @param failure the failure of the attempt, {@code null} if it succeeded
+     */
+    private void onAttemptDone(Request request, List<MensaData> meals, Throwable failure) {
+        MensaCircuitBreaker breaker = breakers.get(request.day.getLocation());
+        if (failure == null) {
+            breaker.recordSuccess();
+            request.complete(meals);
+            return;
+        }
+        breaker.recordFailure();
+        if (request.attempts > retries) {
+            request.fail(failure);
+            return;
+        }
+        long cap = Math.min(maxBackoffMillis, backoffMillis << Math.min(request.attempts - 1, 20));
+        long backoff = ThreadLocalRandom.current().nextLong(cap + 1);
+        timeoutTimer.schedule(() -> schedule(request), backoff, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the threads of this engine. Requests still running are abandoned.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        timeoutTimer.shutdownNow();
+    }
+
+    /**
+     * Creates a thread factory for daemon threads, so that pending requests never
+     * keep the application from exiting.
+     *
+     * @param prefix the prefix of the thread names
+     * @return the thread factory
+     */
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public MensaMealSource getSource() {
+        return source;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public long getBackoffMillis() {
+        return backoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public MensaCircuitBreaker getBreaker(MensaLocation location) {
+        return breakers.get(location);
+    }
+
+    public MensaRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * A request for the meals of one day over all its attempts.
+     */
+    private static final class Request {
+
+        final MensaDay day;
+        final CompletableFuture<List<MensaData>> future = new CompletableFuture<>();
+        final long startNanos = System.nanoTime();
+        volatile long endNanos;
+        // Attempts run one after another, each sees the count of the previous one
+        volatile int attempts;
+
+        Request(MensaDay day) {
+            this.day = day;
+        }
+
+        void complete(List<MensaData> meals) {
+            endNanos = System.nanoTime();
+            future.complete(meals);
+        }
+
+        void fail(Throwable failure) {
+            endNanos = System.nanoTime();
+            future.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * The {@code DayListener} interface is notified whenever the meals of a
+     * single day have been fetched.
+     */
+    public interface DayListener {
+
+        /**
+         * Called from a fetch thread when the meals of a day have arrived.
+         *
+         * @param day   the fetched location and date
+         * @param meals the meals of that day
+         */
+        void dayFetched(MensaDay day, List<MensaData> meals);
+    }
+
+    /**
+     * The {@code Result} class holds the outcome of a {@link MensaFetchEngine}
+     * fetch. Days that failed are missing from the meals and listed in the
+     * failed days instead.
+     */
+    public static class Result {
+
+        private final Map<MensaDay, List<MensaData>> meals = new TreeMap<>();
+        private final List<MensaDay> failedDays = new ArrayList<>();
+        private final Map<MensaDay, Long> dayMillis = new TreeMap<>();
+        private int retries;
+        private long elapsedMillis;
+
+        /**
+         * Returns the fetched meals per day in ascending order.
+         *
+         * @return the fetched meals
+         */
+        public Map<MensaDay, List<MensaData>> getMeals() {
+            return Collections.unmodifiableMap(meals);
+        }
+
+        /**
+         * Returns the days that failed or timed out.
+         *
+         * @return the failed days
+         */
+        public List<MensaDay> getFailedDays() {
+            return Collections.unmodifiableList(failedDays);
+        }
+
+        /**
+         * Returns whether all requested days were fetched successfully.
+         *
+         * @return {@code true} if no day failed
+         */
+        public boolean isComplete() {
+            return failedDays.isEmpty();
+        }
+
+        /**
+         * Returns how long each day took from the start of the fetch until it
+         * was fetched or given up, including its retries.
+         *
+         * @return the milliseconds per day in ascending order of the days
+         */
+        public Map<MensaDay, Long> getDayMillis() {
+            return Collections.unmodifiableMap(dayMillis);
+        }
+
+        /**
+         * Returns the number of requests that were repeated after a failure.
+         *
+         * @return the number of retries of all days
+         */
+        public int getRetries() {
+            return retries;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+}
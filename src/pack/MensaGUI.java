@@ -1,5 +1,10 @@
 package pack;
 
+import java.awt.CardLayout;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
 import javax.swing.*;
 
 /** 
@@ -7,6 +12,9 @@ import javax.swing.*;
  * application.
  * It extends the JFrame class to create a window with a menu bar and menu
  * items.
+ * The application uses a single {@code MensaGUI} window. Its content is a
+ * card layout that holds one {@code MensaGUIView} per function, each built the
+ * first time it is shown.
  * 
  * @author Philipp Schmidt (uggro)
  * @since version 1.0
@@ -38,6 +46,11 @@ public class MensaGUI extends JFrame {
      */
     public JMenuItem menuUebersicht = new JMenuItem("Übersicht");
 
+    private CardLayout cardLayout = new CardLayout();
+    private JPanel cards = new JPanel(cardLayout);
+    private Map<String, MensaGUIView> views = new HashMap<>();
+    private MensaGUIView currentView;
+
     /**
      * Constructs a new instance of the MensaGUI class.
      * Sets up the GUI components, including the menu bar and menu items.
@@ -48,5 +61,62 @@ public class MensaGUI extends JFrame {
         menuFunktionen.add(menuEssensPlan);
         menuFunktionen.add(menuHistorie);
         menuFunktionen.add(menuUebersicht);
+        this.setContentPane(cards);
+    }
+
+    /**
+     * Brings a view to the front. The view is created by the factory the first
+     * time it is shown and reused afterwards. Must be called on the Event
+     * Dispatch Thread, as creating a view starts loading the meal plan.
+     *
+     * @param name    the name of the view
+     * @param factory creates the view if it does not exist yet
+     * @return the shown view
+     */
+    public MensaGUIView showView(String name, Supplier<? extends MensaGUIView> factory) {
+        MensaGUIView view = views.get(name);
+        if (view == null) {
+            view = factory.get();
+            views.put(name, view);
+            cards.add(view, name);
+        }
+        cardLayout.show(cards, name);
+        currentView = view;
+        view.viewShown();
+        return view;
+    }
+
+    // Getters and setters for the class properties
+
+    public CardLayout getCardLayout() {
+        return cardLayout;
+    }
+
+    public void setCardLayout(CardLayout cardLayout) {
+        this.cardLayout = cardLayout;
+    }
+
+    public JPanel getCards() {
+        return cards;
+    }
+
+    public void setCards(JPanel cards) {
+        this.cards = cards;
+    }
+
+    public Map<String, MensaGUIView> getViews() {
+        return views;
+    }
+
+    public void setViews(Map<String, MensaGUIView> views) {
+        this.views = views;
+    }
+
+    public MensaGUIView getCurrentView() {
+        return currentView;
+    }
+
+    public void setCurrentView(MensaGUIView currentView) {
+        this.currentView = currentView;
     }
 }
@@ -1,14 +1,14 @@
 package pack;
 
 import java.awt.*;
-import java.util.*;
 import javax.swing.*;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
 
 /** 
- * The {@code MensaGUIHistory} class extends {@code MensaGUI} and represents
+ * The {@code MensaGUIHistory} class extends {@code MensaGUIView} and represents
  * the GUI for displaying the selected meal history.
  * It includes a table to show the selected meals with their details and allows
  * users to remove entries by clicking on them.
@@ -16,7 +16,7 @@ import javax.swing.table.DefaultTableModel;
  * @author Philipp Schmidt (uggro)
  * @since version 1.0
  */
-public class MensaGUIHistory extends MensaGUI {
+public class MensaGUIHistory extends MensaGUIView {
 
     // GUI components
     private Container c;
@@ -28,7 +28,7 @@ public class MensaGUIHistory extends MensaGUI {
     private JLabel noDataJLabel;
 
     private JTable table;
-    private DefaultTableModel tableModel;
+    private MensaHistoryTableModel tableModel;
 
     private JLabel explanationLabel = new JLabel("Sie können durch Klicken Einträge entfernen");
 
@@ -37,7 +37,7 @@ public class MensaGUIHistory extends MensaGUI {
      * Initializes the GUI components and fills the table with data.
      */
     public MensaGUIHistory() {
-        c = this.getContentPane();
+        c = this;
 
         // Add panels to the container
         c.add(panelHeader, BorderLayout.NORTH);
@@ -52,22 +52,31 @@ public class MensaGUIHistory extends MensaGUI {
         noDataJLabel.setVisible(false);
         panelContent.add(noDataJLabel);
 
-        // Create a table model and set it to the JTable
-        tableModel = new DefaultTableModel() {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
-        tableModel.addColumn("Datum");
-        tableModel.addColumn("Gericht");
-        tableModel.addColumn("Preis");
-        tableModel.addColumn("Kalorien");
-        tableModel.addColumn("Proteine");
-        tableModel.addColumn("Kohlenhydrate");
+        // Create a table model that reads from the selected meal list and set it to
+        // the JTable
+        tableModel = new MensaHistoryTableModel();
         table = new JTable(tableModel);
+
+        // Show the numbers with their units
+        for (int i = 0; i < tableModel.getColumnCount(); i++) {
+            String unit = MensaHistoryTableModel.COLUMN_UNITS[i];
+            if (!unit.isEmpty()) {
+                table.getColumnModel().getColumn(i).setCellRenderer(new MensaHistoryTableModel.UnitRenderer(unit));
+            }
+        }
         panelContent.add(new JScrollPane(table));
 
+        // Update the table with every meal added to or removed from the history
+        MensaData.addListener(tableModel);
+
+        // Show the "no data" message instead of the table when the history runs empty
+        tableModel.addTableModelListener(new TableModelListener() {
+            @Override
+            public void tableChanged(TableModelEvent e) {
+                tableFill();
+            }
+        });
+
         // Add a selection listener to the table
         table.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
             @Override
@@ -84,42 +93,19 @@ public class MensaGUIHistory extends MensaGUI {
     }
 
     /**
-     * Fills the table with selected meal data.
+     * Shows the selected meal data in the table. The rows are read from the
+     * date ordered selected meal list by the table model, which is kept up to
+     * date by the events of {@code MensaData}.
      * If there are selected meals, it displays the table and hides the "no data"
      * message.
      * If there are no selected meals, it hides the table and displays the "no data"
      * message.
      */
     public void tableFill() {
-        // Clear the table
-        clearTable();
-
         if (!MensaData.selectedMealList.isEmpty()) {
             // If there are selected meals, display the table and hide the "no data" message
             table.setVisible(true);
             noDataJLabel.setVisible(false);
-
-            // Sort the selected meal list by meal date
-            Collections.sort(MensaData.selectedMealList, new Comparator<MensaData>() {
-                @Override
-                public int compare(MensaData meal1, MensaData meal2) {
-                    return meal1.getMealDate().compareTo(meal2.getMealDate());
-                }
-            });
-
-            // Add each meal data to the table
-            for (int i = 0; i < MensaData.selectedMealList.size(); i++) {
-                MensaData x = MensaData.selectedMealList.get(i);
-                String mealDate = x.getMealDate();
-                String mealName = x.getMealName();
-                float mealPrice = x.getMealPrice();
-                float mealKcal = x.getMealKcal();
-                float mealProteins = x.getMealProteins();
-                float mealCarbs = x.getMealCarbs();
-
-                tableModel.addRow(new Object[] { mealDate, mealName, mealPrice + " €", mealKcal + " kcal",
-                        mealProteins + " g", mealCarbs + " g" });
-            }
         } else {
             // If there are no selected meals, hide the table and display the "no data"
             // message
@@ -130,39 +116,22 @@ public class MensaGUIHistory extends MensaGUI {
 
     /**
      * Handles the selection change event of the table.
-     * Removes the selected meal from the selected meal list and updates the table.
+     * Removes the selected meal from the selected meal list and deletes its row
+     * from the table.
      */
     private void onTableSelectionChanged() {
         if (!table.getSelectionModel().getValueIsAdjusting()) {
             int selectedRow = table.getSelectedRow();
             if (selectedRow != -1) {
-                // Get the selected meal name and date
-                String mealName = tableModel.getValueAt(selectedRow, 1).toString();
-                String mealDate = tableModel.getValueAt(selectedRow, 0).toString();
-
-                System.out.println("Ausgewählt: " + mealName);
-
-                // Remove the selected meal from the selected meal list
-                for (int i = 0; i < MensaData.selectedMealList.size(); i++) {
-                    MensaData x = MensaData.selectedMealList.get(i);
-                    if (mealName.equals(x.getMealName()) && mealDate.equals(x.getMealDate())) {
-                        MensaData.selectedMealList.remove(i);
-                        break;
-                    }
-                }
-                // Update the table
-                tableFill();
+                // Remove the entry of the selected row from the selected meal list and the
+                // table
+                MensaData x = tableModel.removeEntry(tableModel.getId(selectedRow));
+
+                System.out.println("Ausgewählt: " + x.getMealName());
             }
         }
     }
 
-    /**
-     * Clears the table by removing all rows.
-     */
-    public void clearTable() {
-        tableModel.setRowCount(0);
-    }
-
     // Getters and setters for GUI components
 
     public Container getC() {
@@ -221,11 +190,11 @@ public class MensaGUIHistory extends MensaGUI {
         this.table = table;
     }
 
-    public DefaultTableModel getTableModel() {
+    public MensaHistoryTableModel getTableModel() {
         return tableModel;
     }
 
-    public void setTableModel(DefaultTableModel tableModel) {
+    public void setTableModel(MensaHistoryTableModel tableModel) {
         this.tableModel = tableModel;
     }
 
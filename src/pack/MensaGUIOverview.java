@@ -2,7 +2,18 @@ package pack;
 
 import java.awt.BorderLayout;
 import java.awt.Container;
-
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
@@ -13,14 +24,14 @@ import javax.swing.table.DefaultTableModel;
 /** 
  * The {@code MensaGUIOverview} class represents the graphical user interface
  * (GUI) for the meal overview
- * in the Mensa Food Tracker application. It extends the {@code MensaGUI} class
+ * in the Mensa Food Tracker application. It extends the {@code MensaGUIView} class
  * and displays cumulative
  * information based on the meal history.
  * 
  * @author Philipp Schmidt (uggro)
  * @since version 1.0
  */
-public class MensaGUIOverview extends MensaGUI {
+public class MensaGUIOverview extends MensaGUIView {
 
     private Container c;
 
@@ -30,8 +41,18 @@ public class MensaGUIOverview extends MensaGUI {
     private JLabel headerLabel = new JLabel("Kummulierte Angaben ausgehend von der Historie");
     private JLabel noDataJLabel;
 
+    // "Gesamt" shows the all-time totals, the other modes one row per period
+    private static final String TOTAL_MODE = "Gesamt";
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("MM/yyyy");
+
+    private JComboBox<Object> modeComboBox = new JComboBox<Object>();
+
+    // The shown mode and, if it is a granularity, the first day of the period of each row
+    private Object mode = TOTAL_MODE;
+    private List<LocalDate> rowPeriods = new ArrayList<>();
+
     private JTable table;
-    private static DefaultTableModel tableModel;
+    private DefaultTableModel tableModel;
 
     /**
      * Constructs a new instance of the {@code MensaGUIOverview} class.
@@ -39,7 +60,7 @@ public class MensaGUIOverview extends MensaGUI {
      */
     public MensaGUIOverview() {
 
-        c = this.getContentPane();
+        c = this;
 
         // Set the layout for the container
         c.setLayout(new BorderLayout());
@@ -53,6 +74,13 @@ public class MensaGUIOverview extends MensaGUI {
         // Add the header label to the header panel
         panelHeader.add(headerLabel);
 
+        // Add the granularity modes to the modeComboBox and add it to the header panel
+        modeComboBox.addItem(TOTAL_MODE);
+        for (MensaHistoryRollups.Granularity granularity : MensaHistoryRollups.Granularity.values()) {
+            modeComboBox.addItem(granularity);
+        }
+        panelHeader.add(modeComboBox);
+
         // Create a label to display a message when there is no meal data
         noDataJLabel = new JLabel("Es befinden sich keinerlei Speisen in Ihrer Historie");
         noDataJLabel.setVisible(false);
@@ -68,7 +96,53 @@ public class MensaGUIOverview extends MensaGUI {
             }
         };
 
+        // Create a JTable with the table model and add it to the content panel
+        table = new JTable(tableModel);
+        panelContent.add(new JScrollPane(table));
+
+        // Add an action listener to the modeComboBox to refill the table
+        modeComboBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                preTableFill(modeComboBox.getSelectedItem());
+            }
+        });
+
+        // Update the affected row with every meal added to or removed from the history
+        MensaData.addListener(new MensaDataListener() {
+            @Override
+            public void mealAdded(int id, MensaData meal, int index) {
+                onMealChanged(meal);
+            }
+
+            @Override
+            public void mealRemoved(int id, MensaData meal, int index) {
+                onMealChanged(meal);
+            }
+        });
+
+        // Fill the table with meal data
+        preTableFill(TOTAL_MODE);
+    }
+
+    /**
+     * Fills the table with cumulative meal information based on the meal history.
+     * The all-time values are read from the {@code MensaData.historyTotals}, the
+     * values per day, week or month from the {@code MensaData.historyRollups}.
+     * Both are kept up to date whenever the history changes.
+     *
+     * @param mode {@code TOTAL_MODE} or the granularity of the rows
+     */
+    void preTableFill(Object mode) {
+        this.mode = mode;
+        rowPeriods.clear();
+        tableModel.setRowCount(0);
+        tableModel.setColumnCount(0);
+
         // Add columns to the table model
+        if (mode instanceof MensaHistoryRollups.Granularity) {
+            tableModel.addColumn(mode.toString());
+        }
         tableModel.addColumn("Kalorien");
         tableModel.addColumn("Proteine");
         tableModel.addColumn("Kohlenhydrate");
@@ -76,48 +150,116 @@ public class MensaGUIOverview extends MensaGUI {
         tableModel.addColumn("Gesamtkosten");
         tableModel.addColumn("Veggie-Anteil");
 
-        // Create a JTable with the table model and add it to the content panel
-        table = new JTable(tableModel);
-        panelContent.add(new JScrollPane(table));
+        if (!(mode instanceof MensaHistoryRollups.Granularity)) {
+            synchronized (MensaData.selectedMealList) {
+                tableModel.addRow(totalsRow(null, MensaData.historyTotals));
+            }
+            return;
+        }
 
-        // Fill the table with meal data
-        preTableFill();
+        // One row per period, the latest period first
+        MensaHistoryRollups.Granularity granularity = (MensaHistoryRollups.Granularity) mode;
+        synchronized (MensaData.selectedMealList) {
+            for (Map.Entry<LocalDate, MensaHistoryTotals> entry : MensaData.historyRollups.getRollup(granularity)
+                    .descendingMap().entrySet()) {
+                tableModel.addRow(totalsRow(periodLabel(granularity, entry.getKey()), entry.getValue()));
+                rowPeriods.add(entry.getKey());
+            }
+        }
     }
 
     /**
-     * Fills the table with cumulative meal information based on the meal history.
+     * Updates the row affected by a meal that was added to or removed from the
+     * history. In the granularity modes the row of the period of the meal is
+     * inserted, updated or removed; the rows of all other periods are left
+     * untouched.
+     *
+     * @param meal the added or removed meal
      */
-    private static void preTableFill() {
-        float mealKcal = 0;
-        float mealProteins = 0;
-        float mealCarbs = 0;
-        float mealFats = 0;
-        float mealPrices = 0;
-        int mealVeggieCounter = 0;
-        float mealVeggiePercentage;
-        String mealType;
-
-        // Iterate through the selectedMealList and calculate cumulative meal
-        // information
-        for (int i = 0; i < MensaData.selectedMealList.size(); i++) {
-            MensaData x = MensaData.selectedMealList.get(i);
-            mealKcal = mealKcal + x.getMealKcal();
-            mealProteins = mealProteins + x.getMealProteins();
-            mealCarbs = mealCarbs + x.getMealCarbs();
-            mealFats = mealFats + x.getMealFat();
-            mealPrices = mealPrices + x.getMealPrice();
-            mealType = x.getMealType().toString();
-            if (mealType.equals("VEGAN") || mealType.equals("VEGETARIAN")) {
-                mealVeggieCounter++;
+    private void onMealChanged(MensaData meal) {
+        if (!(mode instanceof MensaHistoryRollups.Granularity)) {
+            Object[] values;
+            synchronized (MensaData.selectedMealList) {
+                values = totalsRow(null, MensaData.historyTotals);
+            }
+            setRow(0, values);
+            return;
+        }
+
+        MensaHistoryRollups.Granularity granularity = (MensaHistoryRollups.Granularity) mode;
+        LocalDate period = granularity.periodStart(LocalDate.parse(meal.getMealDate(), MensaData.formatter));
+        Object[] values = null;
+        synchronized (MensaData.selectedMealList) {
+            MensaHistoryTotals totals = MensaData.historyRollups.getRollup(granularity).get(period);
+            if (totals != null) {
+                values = totalsRow(periodLabel(granularity, period), totals);
             }
         }
+        int row = Collections.binarySearch(rowPeriods, period, Comparator.reverseOrder());
+        if (row >= 0 && values == null) {
+            // The last meal of the period was removed
+            tableModel.removeRow(row);
+            rowPeriods.remove(row);
+        } else if (row >= 0) {
+            setRow(row, values);
+        } else if (values != null) {
+            // The first meal of the period was added
+            row = -row - 1;
+            tableModel.insertRow(row, values);
+            rowPeriods.add(row, period);
+        }
+    }
+
+    /**
+     * Returns a row with formatted totals.
+     *
+     * @param period the label of the period, or {@code null} for the all-time
+     *               totals
+     * @param totals the totals to show
+     * @return the values of the row
+     */
+    private static Object[] totalsRow(String period, MensaHistoryTotals totals) {
+        Object[] row = { totals.getKcal(), totals.getProteins() + " g", totals.getCarbs() + " g",
+                totals.getFat() + " g", MensaData.df.format(totals.getPrice()) + " €",
+                MensaData.df.format(totals.getVeggieShare()) + " %" };
+        if (period == null) {
+            return row;
+        }
+        Object[] periodRow = new Object[row.length + 1];
+        periodRow[0] = period;
+        System.arraycopy(row, 0, periodRow, 1, row.length);
+        return periodRow;
+    }
 
-        // Calculate the percentage of veggie meals
-        mealVeggiePercentage = (float) mealVeggieCounter / MensaData.selectedMealList.size();
+    /**
+     * Replaces the values of a row of the table.
+     *
+     * @param row    the index of the row
+     * @param values the new values
+     */
+    private void setRow(int row, Object[] values) {
+        for (int column = 0; column < values.length; column++) {
+            tableModel.setValueAt(values[column], row, column);
+        }
+    }
 
-        // Add a new row to the table with the cumulative meal information and formatted numbers
-        tableModel.addRow(new Object[] { mealKcal, mealProteins + " g", mealCarbs + " g", mealFats + " g",
-                MensaData.df.format(mealPrices) + " €", MensaData.df.format(mealVeggiePercentage) + " %" });
+    /**
+     * Returns the label of a period shown in the first column.
+     *
+     * @param granularity the length of the period
+     * @param start       the first day of the period
+     * @return the date, the calendar week or the month of the period
+     */
+    private static String periodLabel(MensaHistoryRollups.Granularity granularity, LocalDate start) {
+        switch (granularity) {
+            case WEEK:
+                return "KW " + start.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR) + " "
+                        + start.get(IsoFields.WEEK_BASED_YEAR);
+            case MONTH:
+                return start.format(MONTH_FORMATTER);
+            default:
+                return start.format(MensaData.formatter);
+        }
     }
 
     // Getters and setters for the class properties
@@ -162,6 +304,14 @@ public class MensaGUIOverview extends MensaGUI {
         this.noDataJLabel = noDataJLabel;
     }
 
+    public JComboBox<Object> getModeComboBox() {
+        return modeComboBox;
+    }
+
+    public void setModeComboBox(JComboBox<Object> modeComboBox) {
+        this.modeComboBox = modeComboBox;
+    }
+
     public JTable getTable() {
         return table;
     }
@@ -170,12 +320,20 @@ public class MensaGUIOverview extends MensaGUI {
         this.table = table;
     }
 
-    public static DefaultTableModel getTableModel() {
+    public DefaultTableModel getTableModel() {
         return tableModel;
     }
 
-    public static void setTableModel(DefaultTableModel tableModel) {
-        MensaGUIOverview.tableModel = tableModel;
+    public void setTableModel(DefaultTableModel tableModel) {
+        this.tableModel = tableModel;
+    }
+
+    public Object getMode() {
+        return mode;
+    }
+
+    public List<LocalDate> getRowPeriods() {
+        return rowPeriods;
     }
 
 }
@@ -1,6 +1,8 @@
 package pack;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.table.DefaultTableModel;
@@ -9,18 +11,21 @@ import java.awt.*;
 import java.awt.event.*;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaLocation;
 
 /**
  * The {@code MensaGUIPlan} class represents a graphical user interface for
  * displaying a
  * dining plan.
- * It extends the {@code MensaGUI} class, which serves as the base class for the
- * GUI.
+ * It extends the {@code MensaGUIView} class, which serves as the base class for the
+ * views of the main window.
  * 
  * @author Philipp Schmidt (uggro)
  * @since version 1.0
  */
-public class MensaGUIPlan extends MensaGUI {
+public class MensaGUIPlan extends MensaGUIView {
 
     private Container c;
 
@@ -32,8 +37,15 @@ public class MensaGUIPlan extends MensaGUI {
     private JLabel headerLabel = new JLabel("Essensplan Übersicht");
 
     private JComboBox<String> dateComboBox = new JComboBox<String>();
+    private JComboBox<MensaLocation> locationComboBox = new JComboBox<MensaLocation>();
+    private JButton refreshButton = new JButton("Aktualisieren");
     private JLabel noDataJLabel;
 
+    private JLabel searchLabel = new JLabel("Suche");
+    private JTextField searchField = new JTextField();
+    private DefaultListModel<MensaSearchIndex.Hit> searchListModel = new DefaultListModel<MensaSearchIndex.Hit>();
+    private JList<MensaSearchIndex.Hit> searchList = new JList<MensaSearchIndex.Hit>(searchListModel);
+
     private JTable table;
     private DefaultTableModel tableModel;
 
@@ -44,10 +56,10 @@ public class MensaGUIPlan extends MensaGUI {
      * It initializes the GUI components and sets up event listeners.
      */
     public MensaGUIPlan() {
-        // Get the content pane of the GUI
-        c = this.getContentPane();
+        // The view itself is the container of its panels
+        c = this;
 
-        // Set up the layout and add panels to the content pane
+        // Set up the layout and add panels to the view
         c.add(panelHeader, BorderLayout.NORTH);
         c.add(panelFilter, BorderLayout.WEST);
         c.add(panelContent, BorderLayout.CENTER);
@@ -58,9 +70,17 @@ public class MensaGUIPlan extends MensaGUI {
 
         // Set up the layout for the filter panel
         panelFilter.setLayout(new BoxLayout(panelFilter, BoxLayout.Y_AXIS));
+        panelFilter.add(locationComboBox);
         panelFilter.add(dateComboBox);
+        panelFilter.add(refreshButton);
+
+        // Populate the locationComboBox with the fetched locations
+        for (MensaLocation location : MensaData.locations) {
+            locationComboBox.addItem(location);
+        }
 
-        // Set the maximum size of the dateComboBox
+        // Set the maximum size of the combo boxes
+        locationComboBox.setMaximumSize(new Dimension(Integer.MAX_VALUE, locationComboBox.getPreferredSize().height));
         dateComboBox.setMaximumSize(new Dimension(Integer.MAX_VALUE, dateComboBox.getPreferredSize().height));
 
         // Create a label for displaying a message when no data is available for the
@@ -69,6 +89,17 @@ public class MensaGUIPlan extends MensaGUI {
         noDataJLabel.setVisible(false);
         panelFilter.add(noDataJLabel);
 
+        // Add the search field and the list of its results below the filters
+        panelFilter.add(Box.createVerticalStrut(10));
+        panelFilter.add(searchLabel);
+        panelFilter.add(searchField);
+        searchField.setMaximumSize(new Dimension(Integer.MAX_VALUE, searchField.getPreferredSize().height));
+        searchList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        searchList.setVisibleRowCount(8);
+        JScrollPane searchScrollPane = new JScrollPane(searchList);
+        searchScrollPane.setPreferredSize(new Dimension(280, 160));
+        panelFilter.add(searchScrollPane);
+
         // Create the table and table model for displaying the meal data
         tableModel = new DefaultTableModel() {
             // Override the isCellEditable() method to make the table cells non-editable
@@ -99,6 +130,49 @@ public class MensaGUIPlan extends MensaGUI {
             }
         });
 
+        // Add an action listener to the locationComboBox to handle location selection
+        // changes
+        locationComboBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                onDateComboBoxSelectionChanged();
+            }
+        });
+
+        // Add an action listener to the refreshButton to fetch the whole meal plan again
+        refreshButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                MensaPlanLoader.refresh();
+            }
+        });
+
+        // Search again on every change of the search field
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                onSearchChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                onSearchChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                onSearchChanged();
+            }
+        });
+
+        // Jump to the plan of a dish when it is selected in the search results
+        searchList.addListSelectionListener(new ListSelectionListener() {
+            @Override
+            public void valueChanged(ListSelectionEvent e) {
+                onSearchSelectionChanged();
+            }
+        });
+
         // Add a list selection listener to the table to handle row selection changes
         table.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
             @Override
@@ -107,8 +181,27 @@ public class MensaGUIPlan extends MensaGUI {
             }
         });
 
-        // Fetch the meal data from the library
-        MensaData.fetchLibrary();
+        // Update the table whenever the selected day starts loading, arrives or fails
+        MensaData.addListener(new MensaDataListener() {
+            @Override
+            public void dayLoaded(MensaDay day) {
+                onDayLoaded(day);
+            }
+
+            @Override
+            public void dayStateChanged(MensaDay day) {
+                onDayLoaded(day);
+            }
+
+            @Override
+            public void windowMoved(LocalDate start, LocalDate end) {
+                onWindowMoved();
+            }
+        });
+
+        // Fetch the meal data in the background and show each day as soon as it
+        // arrives
+        MensaPlanLoader.start();
 
         // Pre-fill the table with meal data for the current date
         preTableFill();
@@ -137,69 +230,121 @@ public class MensaGUIPlan extends MensaGUI {
     }
 
     /**
-     * Handles the selection change event of the dateComboBox.
-     * Updates the table with meal data for the selected date.
+     * Handles the selection change event of the dateComboBox and the
+     * locationComboBox.
+     * Updates the table with meal data for the selected date and location.
      */
     private void onDateComboBoxSelectionChanged() {
         String selectedDate = (String) dateComboBox.getSelectedItem();
+        if (selectedDate == null) {
+            return; // The dates are being replaced
+        }
+        showMeals(selectedDate);
+    }
+
+    /**
+     * Pre-fills the table with meal data for the current date.
+     * If no data is available, it hides the table and shows the noDataJLabel.
+     */
+    public void preTableFill() {
+        showMeals(MensaData.currentDate.format(MensaData.formatter));
+    }
 
+    /**
+     * Handles a day of the meal plan that has started or finished loading.
+     * Updates the table if the day is currently selected.
+     *
+     * @param day the location and date whose loading state has changed
+     */
+    private void onDayLoaded(MensaDay day) {
+        String loadedDate = day.getDate().format(MensaData.formatter);
+        if (day.getLocation() == locationComboBox.getSelectedItem()
+                && loadedDate.equals(dateComboBox.getSelectedItem())) {
+            showMeals(loadedDate);
+        }
+    }
+
+    /**
+     * Handles a move of the date range of the meal plan.
+     * Fills the dateComboBox with the new dates and keeps the selected date if
+     * it is still in the range, otherwise the first date is selected.
+     */
+    private void onWindowMoved() {
+        Object selectedDate = dateComboBox.getSelectedItem();
+        dateComboBox.removeAllItems();
+        datesIntoComboBox(dateComboBox);
+        dateComboBox.setSelectedItem(selectedDate); // Ignored if the date has left the range
+        onDateComboBoxSelectionChanged();
+    }
+
+    /**
+     * Fills the table with the meal data of the given date at the selected
+     * location.
+     * If no data is available, it hides the table and shows the noDataJLabel,
+     * which tells whether the day is still loading or the mensa is closed. If
+     * the shown meals come from the cache because the day could not be fetched,
+     * the noDataJLabel says so below the filters.
+     *
+     * @param selectedDate the date to show the meals of
+     */
+    private void showMeals(String selectedDate) {
         // Clear the table model
         tableModel.setRowCount(0);
 
-        int j = 0;
-
-        // Iterate over the meal data and add rows to the table model for the selected
-        // date
-        for (int i = 0; i < MensaData.mealDataList.size(); i++) {
-            MensaData x = MensaData.mealDataList.get(i);
-            if (x.getMealDate().equals(selectedDate)) {
-                String mealName = x.getMealName();
-                String mealPrice = String.valueOf(x.getMealPrice());
-                tableModel.addRow(new Object[] { mealName, mealPrice + " €" });
-                j++;
-            }
+        MensaLocation location = (MensaLocation) locationComboBox.getSelectedItem();
+        LocalDate date = LocalDate.parse(selectedDate, MensaData.formatter);
+        List<MensaData> meals = MensaData.mealStore.getMeals(location, date);
+
+        // Add a row to the table model for each meal of the selected date
+        for (MensaData x : meals) {
+            String mealName = x.getMealName();
+            String mealPrice = String.valueOf(x.getMealPrice());
+            tableModel.addRow(new Object[] { mealName, mealPrice + " €" });
         }
 
         // Show or hide the table and the noDataJLabel based on whether data is
         // available for the selected date
-        if (j == 0 && !noDataJLabel.isVisible()) {
+        if (meals.isEmpty()) {
+            if (MensaData.isPending(location, date)) {
+                noDataJLabel.setText("Speiseplan wird geladen ...");
+            } else if (MensaData.isFailed(location, date)) {
+                noDataJLabel.setText("Speiseplan nicht verfügbar ");
+            } else {
+                noDataJLabel.setText("Mensa geschlossen ");
+            }
             table.setVisible(false);
             noDataJLabel.setVisible(true);
-        } else if (j == 0 && noDataJLabel.isVisible()) {
-            // Do nothing
         } else {
             table.setVisible(true);
-            noDataJLabel.setVisible(false);
+            // Cached meals are kept when a day cannot be fetched again
+            noDataJLabel.setText("Gespeicherter Stand, Abruf fehlgeschlagen ");
+            noDataJLabel.setVisible(MensaData.isFailed(location, date));
         }
     }
 
     /**
-     * Pre-fills the table with meal data for the current date.
-     * If no data is available, it hides the table and shows the noDataJLabel.
+     * Handles a change of the search field.
+     * Fills the result list with the dishes matching the entered words.
      */
-    public void preTableFill() {
-        String currentDate = MensaData.currentDate.format(MensaData.formatter);
-
-        int j = 0;
-
-        // Iterate over the meal data and add rows to the table model for the current
-        // date
-        for (int i = 0; i < MensaData.mealDataList.size(); i++) {
-            MensaData x = MensaData.mealDataList.get(i);
-            if (x.getMealDate().equals(currentDate)) {
-                String mealName = x.getMealName();
-                String mealPrice = String.valueOf(x.getMealPrice());
-                tableModel.addRow(new Object[] { mealName, mealPrice + " €" });
-                j++;
-            }
+    private void onSearchChanged() {
+        searchListModel.clear();
+        for (MensaSearchIndex.Hit hit : MensaData.searchIndex.search(searchField.getText(), 50)) {
+            searchListModel.addElement(hit);
         }
+    }
 
-        // Show or hide the table and the noDataJLabel based on whether data is
-        // available for the current date
-        if (j == 0) {
-            table.setVisible(false);
-            noDataJLabel.setVisible(true);
+    /**
+     * Handles the selection change event of the search result list.
+     * Shows the first day of the meal plan offering the selected dish.
+     */
+    private void onSearchSelectionChanged() {
+        MensaSearchIndex.Hit hit = searchList.getSelectedValue();
+        if (hit == null || hit.getPlanDays().isEmpty()) {
+            return; // The dish is only in the history
         }
+        MensaDay day = hit.getPlanDays().get(0);
+        locationComboBox.setSelectedItem(day.getLocation());
+        dateComboBox.setSelectedItem(day.getDate().format(MensaData.formatter));
     }
 
     /**
@@ -215,13 +360,12 @@ public class MensaGUIPlan extends MensaGUI {
 
                 System.out.println("Ausgewählt: " + mealName);
 
-                // Iterate over the meal data and add the selected meal to the selectedMealList
-                for (int i = 0; i < MensaData.mealDataList.size(); i++) {
-                    MensaData x = MensaData.mealDataList.get(i);
-                    if (mealName.equals(x.getMealName()) && mealDate.equals(x.getMealDate())) {
-                        MensaData.selectedMealList.add(x);
-                        break;
-                    }
+                // Look up the selected meal and add it to the selectedMealList
+                MensaLocation location = (MensaLocation) locationComboBox.getSelectedItem();
+                MensaData x = MensaData.mealStore.find(location, LocalDate.parse(mealDate, MensaData.formatter),
+                        mealName);
+                if (x != null) {
+                    MensaData.addSelectedMeal(x);
                 }
             }
         }
@@ -285,6 +429,22 @@ public class MensaGUIPlan extends MensaGUI {
         this.dateComboBox = dateComboBox;
     }
 
+    public JComboBox<MensaLocation> getLocationComboBox() {
+        return locationComboBox;
+    }
+
+    public void setLocationComboBox(JComboBox<MensaLocation> locationComboBox) {
+        this.locationComboBox = locationComboBox;
+    }
+
+    public JButton getRefreshButton() {
+        return refreshButton;
+    }
+
+    public void setRefreshButton(JButton refreshButton) {
+        this.refreshButton = refreshButton;
+    }
+
     public JLabel getNoDataJLabel() {
         return noDataJLabel;
     }
@@ -293,6 +453,38 @@ public class MensaGUIPlan extends MensaGUI {
         this.noDataJLabel = noDataJLabel;
     }
 
+    public JLabel getSearchLabel() {
+        return searchLabel;
+    }
+
+    public void setSearchLabel(JLabel searchLabel) {
+        this.searchLabel = searchLabel;
+    }
+
+    public JTextField getSearchField() {
+        return searchField;
+    }
+
+    public void setSearchField(JTextField searchField) {
+        this.searchField = searchField;
+    }
+
+    public DefaultListModel<MensaSearchIndex.Hit> getSearchListModel() {
+        return searchListModel;
+    }
+
+    public void setSearchListModel(DefaultListModel<MensaSearchIndex.Hit> searchListModel) {
+        this.searchListModel = searchListModel;
+    }
+
+    public JList<MensaSearchIndex.Hit> getSearchList() {
+        return searchList;
+    }
+
+    public void setSearchList(JList<MensaSearchIndex.Hit> searchList) {
+        this.searchList = searchList;
+    }
+
     public JTable getTable() {
         return table;
     }
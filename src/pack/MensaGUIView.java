@@ -0,0 +1,30 @@
+package pack;
+
+import java.awt.BorderLayout;
+
+import javax.swing.JPanel;
+
+/**
+ * The {@code MensaGUIView} class is the base class of the views shown in the
+ * main window {@code MensaGUI}. Every view is built once and kept while the
+ * application runs; switching to it only brings it to the front.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public abstract class MensaGUIView extends JPanel {
+
+    /**
+     * Constructs a new {@code MensaGUIView} with a {@code BorderLayout}.
+     */
+    protected MensaGUIView() {
+        super(new BorderLayout());
+    }
+
+    /**
+     * Called on the Event Dispatch Thread whenever the view is brought to the
+     * front. Views update here what has changed while they were hidden.
+     */
+    public void viewShown() {
+    }
+}
@@ -0,0 +1,444 @@
+package pack;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The {@code MensaHistory} class holds the meals of the history ordered by
+ * their date. A meal is inserted at its place when it is added, so the history
+ * never has to be sorted; meals of the same day keep the order in which they
+ * were added.
+ * <p>
+ * Every entry gets a stable id when it is added. The same meal may be added
+ * several times, each time as a new entry with its own id, so an entry can be
+ * removed exactly even if an equal meal is in the history as well. Ids are
+ * never reused, not even after {@link #clear()}.
+ * <p>
+ * The meals are stored in a treap keyed by the epoch day of the meal and the
+ * id of the entry. Every node knows the size of its subtree, so adding,
+ * removing and accessing a meal by its position take {@code O(log n)}, and
+ * iterating over the history in date order takes {@code O(1)} per meal. An
+ * index from the ids to the nodes finds an entry in {@code O(1)}.
+ * <p>
+ * As a {@code List}, {@link #add(MensaData)} inserts in date order instead of
+ * appending, and the meals cannot be replaced or inserted at a given
+ * position.
+ * <p>
+ * Every method that reads or changes the history is atomic; it synchronizes on
+ * the history itself. Iterating, like any other sequence of calls that has to
+ * see a consistent history, must hold the monitor of the history for the
+ * whole sequence. Threads that only need to read all meals can take a
+ * {@link #snapshot()} instead.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaHistory extends AbstractList<MensaData> {
+
+    private final Random random = new Random();
+
+    private final Map<Integer, Node> nodes = new HashMap<>();
+
+    private Node root;
+    private int nextId;
+
+    /**
+     * Adds a meal after all meals of earlier or the same date.
+     *
+     * @param meal the added meal
+     * @return {@code true}
+     */
+    @Override
+    public boolean add(MensaData meal) {
+        addEntry(meal);
+        return true;
+    }
+
+    /**
+     * Adds a meal as a new entry after all meals of earlier or the same date.
+     *
+     * @param meal the added meal
+     * @return the id of the new entry
+     */
+    public synchronized int addEntry(MensaData meal) {
+        long epochDay = LocalDate.parse(meal.getMealDate(), MensaData.formatter).toEpochDay();
+        Node node = new Node(meal, epochDay, nextId++, random.nextInt());
+        Node[] parts = split(root, node.epochDay, node.id);
+        root = merge(merge(parts[0], node), parts[1]);
+        root.parent = null;
+        nodes.put(node.id, node);
+        modCount++;
+        return node.id;
+    }
+
+    /**
+     * Returns the id of the entry at a position in date order.
+     *
+     * @param index the position of the entry
+     * @return the id of the entry
+     */
+    public synchronized int getId(int index) {
+        return nodeAt(index).id;
+    }
+
+    /**
+     * Returns the meal of an entry.
+     *
+     * @param id the id of the entry
+     * @return the meal, or {@code null} if there is no entry with the id
+     */
+    public synchronized MensaData getById(int id) {
+        Node node = nodes.get(id);
+        return node == null ? null : node.meal;
+    }
+
+    /**
+     * Returns the position of an entry in date order.
+     *
+     * @param id the id of the entry
+     * @return the position, or {@code -1} if there is no entry with the id
+     */
+    public synchronized int indexOfId(int id) {
+        Node node = nodes.get(id);
+        if (node == null) {
+            return -1;
+        }
+        int index = size(node.left);
+        for (; node.parent != null; node = node.parent) {
+            if (node.parent.right == node) {
+                index += size(node.parent.left) + 1;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param id the id of the entry
+     * @return the removed meal, or {@code null} if there is no entry with the id
+     */
+    public synchronized MensaData removeById(int id) {
+        Node node = nodes.get(id);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.meal;
+    }
+
+    /**
+     * Removes the first entry of the meal's date whose meal is equal to the
+     * given one in all stored fields. Only the entries of that date are
+     * compared; the first of them is found through the treap.
+     *
+     * @param meal the meal to remove
+     * @return the id of the removed entry, or {@code -1} if there is none
+     */
+    public synchronized int removeFirstEqual(MensaData meal) {
+        long epochDay = LocalDate.parse(meal.getMealDate(), MensaData.formatter).toEpochDay();
+        String line = meal.toCsvLine();
+        for (Node node = firstOfDay(epochDay); node != null && node.epochDay == epochDay; node = successor(node)) {
+            if (node.meal.toCsvLine().equals(line)) {
+                unlink(node);
+                return node.id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Passes every entry in date order to an action.
+     *
+     * @param action receives the meal and the id of each entry
+     */
+    public synchronized void forEachEntry(ObjIntConsumer<MensaData> action) {
+        for (Node node = first(root); node != null; node = successor(node)) {
+            action.accept(node.meal, node.id);
+        }
+    }
+
+    /**
+     * Returns the meal at a position in date order.
+     *
+     * @param index the position of the meal
+     * @return the meal
+     */
+    @Override
+    public synchronized MensaData get(int index) {
+        return nodeAt(index).meal;
+    }
+
+    /**
+     * Removes the meal at a position in date order.
+     *
+     * @param index the position of the meal
+     * @return the removed meal
+     */
+    @Override
+    public synchronized MensaData remove(int index) {
+        Node node = nodeAt(index);
+        unlink(node);
+        return node.meal;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size(root);
+    }
+
+    @Override
+    public synchronized void clear() {
+        root = null;
+        nodes.clear();
+        modCount++;
+    }
+
+    /**
+     * Returns a copy of the meals in date order.
+     *
+     * @return a new list that is not affected by later changes
+     */
+    public synchronized List<MensaData> snapshot() {
+        return new ArrayList<>(this);
+    }
+
+    /**
+     * Returns an iterator over the meals in date order. The caller must hold the
+     * monitor of the history while iterating.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<MensaData> iterator() {
+        return new Iterator<MensaData>() {
+
+            private Node next = first(root);
+            private Node last;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public MensaData next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = successor(next);
+                return last.meal;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                unlink(last);
+                last = null;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    /**
+     * Returns the node at a position in date order.
+     *
+     * @param index the position of the node
+     * @return the node
+     */
+    private Node nodeAt(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Removes a node by putting the merge of its subtrees in its place.
+     *
+     * @param node the node to remove
+     */
+    private void unlink(Node node) {
+        Node parent = node.parent;
+        Node replacement = merge(node.left, node.right);
+        if (replacement != null) {
+            replacement.parent = parent;
+        }
+        if (parent == null) {
+            root = replacement;
+        } else if (parent.left == node) {
+            parent.left = replacement;
+        } else {
+            parent.right = replacement;
+        }
+        for (Node ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+            ancestor.size--;
+        }
+        node.left = node.right = node.parent = null;
+        nodes.remove(node.id);
+        modCount++;
+    }
+
+    /**
+     * Splits a subtree into the nodes ordered before a key and the remaining
+     * nodes.
+     *
+     * @param node     the root of the subtree
+     * @param epochDay the epoch day of the key
+     * @param id       the id of the key
+     * @return the two subtrees, either may be {@code null}
+     */
+    private static Node[] split(Node node, long epochDay, int id) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (node.isBefore(epochDay, id)) {
+            Node[] parts = split(node.right, epochDay, id);
+            node.setRight(parts[0]);
+            parts[0] = node;
+            return parts;
+        }
+        Node[] parts = split(node.left, epochDay, id);
+        node.setLeft(parts[1]);
+        parts[1] = node;
+        return parts;
+    }
+
+    /**
+     * Merges two subtrees whose nodes are all ordered before the nodes of the
+     * second one.
+     *
+     * @param left  the root of the first subtree
+     * @param right the root of the second subtree
+     * @return the root of the merged subtree
+     */
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.setRight(merge(left.right, right));
+            return left;
+        }
+        right.setLeft(merge(left, right.left));
+        return right;
+    }
+
+    private static Node first(Node node) {
+        if (node != null) {
+            while (node.left != null) {
+                node = node.left;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Returns the first node of a date or of the next later date.
+     *
+     * @param epochDay the epoch day of the date
+     * @return the node, or {@code null} if all nodes are of earlier dates
+     */
+    private Node firstOfDay(long epochDay) {
+        Node found = null;
+        for (Node node = root; node != null;) {
+            if (node.epochDay < epochDay) {
+                node = node.right;
+            } else {
+                found = node;
+                node = node.left;
+            }
+        }
+        return found;
+    }
+
+    private static Node successor(Node node) {
+        if (node.right != null) {
+            return first(node.right);
+        }
+        while (node.parent != null && node.parent.right == node) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * An entry of the history with its key and the size of its subtree.
+     */
+    private static final class Node {
+
+        final MensaData meal;
+        final long epochDay;
+        final int id;
+        final int priority;
+
+        Node left;
+        Node right;
+        Node parent;
+        int size = 1;
+
+        Node(MensaData meal, long epochDay, int id, int priority) {
+            this.meal = meal;
+            this.epochDay = epochDay;
+            this.id = id;
+            this.priority = priority;
+        }
+
+        boolean isBefore(long otherEpochDay, int otherId) {
+            return epochDay < otherEpochDay || (epochDay == otherEpochDay && id < otherId);
+        }
+
+        void setLeft(Node child) {
+            left = child;
+            if (child != null) {
+                child.parent = this;
+            }
+            size = 1 + size(left) + size(right);
+        }
+
+        void setRight(Node child) {
+            right = child;
+            if (child != null) {
+                child.parent = this;
+            }
+            size = 1 + size(left) + size(right);
+        }
+    }
+}
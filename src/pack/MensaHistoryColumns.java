@@ -0,0 +1,214 @@
+package pack;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaMealType;
+
+/**
+ * The {@code MensaHistoryColumns} class stores the numeric data of the meal
+ * history column by column in primitive arrays: prices and nutrients as
+ * {@code float[]}, dates as {@code int} epoch days and meal types as
+ * {@code byte} codes. Sums over a column run over contiguous memory instead of
+ * following a reference per meal. The {@code MensaHistoryTotals} and the
+ * {@code MensaHistoryRollups} are rebuilt from the columns after the history
+ * has been read, without parsing a date or reading a dish per meal.
+ * <p>
+ * The {@code MensaData} objects of the history stay in the
+ * {@code selectedMealList} for the views. The columns are kept in step by
+ * {@code MensaData.addSelectedMeal} and {@code MensaData.removeSelectedEntry};
+ * their row order is not the order of the list. Rows are found by the id of
+ * their history entry.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaHistoryColumns {
+
+    private static final MensaMealType[] TYPES = MensaMealType.values();
+
+    // Whether the type of a code is one of the MensaData.VEGGIE_TYPES
+    private static final boolean[] VEGGIE = new boolean[TYPES.length];
+
+    static {
+        for (MensaMealType type : MensaData.VEGGIE_TYPES) {
+            VEGGIE[typeCode(type)] = true;
+        }
+    }
+
+    private final Map<Integer, Integer> rowsById = new HashMap<>();
+
+    private int[] ids = new int[16];
+    private int[] epochDays = new int[16];
+    private byte[] typeCodes = new byte[16];
+    private float[] prices = new float[16];
+    private float[] kcal = new float[16];
+    private float[] proteins = new float[16];
+    private float[] carbs = new float[16];
+    private float[] fats = new float[16];
+    private int size;
+
+    /**
+     * Replaces the content of the columns with the given meals.
+     *
+     * @param history the entries of the history
+     */
+    public void rebuild(MensaHistory history) {
+        rowsById.clear();
+        size = 0;
+        history.forEachEntry(this::add);
+    }
+
+    /**
+     * Appends an entry of the history as a new row.
+     *
+     * @param meal the meal of the entry
+     * @param id   the id of the entry
+     */
+    public void add(MensaData meal, int id) {
+        if (size == ids.length) {
+            grow();
+        }
+        ids[size] = id;
+        rowsById.put(id, size);
+        epochDays[size] = (int) LocalDate.parse(meal.getMealDate(), MensaData.formatter).toEpochDay();
+        typeCodes[size] = typeCode(meal.getMealType());
+        prices[size] = meal.getMealPrice();
+        kcal[size] = meal.getMealKcal();
+        proteins[size] = meal.getMealProteins();
+        carbs[size] = meal.getMealCarbs();
+        fats[size] = meal.getMealFat();
+        size++;
+    }
+
+    /**
+     * Removes the row of an entry by moving the last row into its place.
+     *
+     * @param id the id of the removed entry
+     * @return {@code true} if a row of the entry was found
+     */
+    public boolean remove(int id) {
+        Integer row = rowsById.remove(id);
+        if (row == null) {
+            return false;
+        }
+        int i = row;
+        int last = --size;
+        if (i != last) {
+            ids[i] = ids[last];
+            epochDays[i] = epochDays[last];
+            typeCodes[i] = typeCodes[last];
+            prices[i] = prices[last];
+            kcal[i] = kcal[last];
+            proteins[i] = proteins[last];
+            carbs[i] = carbs[last];
+            fats[i] = fats[last];
+            rowsById.put(ids[i], i);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the byte code of a meal type.
+     *
+     * @param type the meal type
+     * @return the code of the type
+     */
+    public static byte typeCode(MensaMealType type) {
+        return (byte) type.ordinal();
+    }
+
+    /**
+     * Returns the meal type of a byte code.
+     *
+     * @param code the code of the type
+     * @return the meal type
+     */
+    public static MensaMealType mealType(byte code) {
+        return TYPES[code];
+    }
+
+    /**
+     * Returns whether the meal type of a byte code is one of the
+     * {@code MensaData.VEGGIE_TYPES}.
+     *
+     * @param code the code of the type
+     * @return {@code true} for vegan and vegetarian meals
+     */
+    public static boolean isVeggie(byte code) {
+        return VEGGIE[code];
+    }
+
+    /**
+     * Counts the meals whose type is one of the {@code MensaData.VEGGIE_TYPES}.
+     *
+     * @return the number of veggie meals
+     */
+    public int countVeggie() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (VEGGIE[typeCodes[i]]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of meals in the history
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Doubles the capacity of all columns.
+     */
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        typeCodes = Arrays.copyOf(typeCodes, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        kcal = Arrays.copyOf(kcal, capacity);
+        proteins = Arrays.copyOf(proteins, capacity);
+        carbs = Arrays.copyOf(carbs, capacity);
+        fats = Arrays.copyOf(fats, capacity);
+    }
+
+    public int getId(int row) {
+        return ids[row];
+    }
+
+    public int getEpochDay(int row) {
+        return epochDays[row];
+    }
+
+    public byte getTypeCode(int row) {
+        return typeCodes[row];
+    }
+
+    public float getPrice(int row) {
+        return prices[row];
+    }
+
+    public float getKcal(int row) {
+        return kcal[row];
+    }
+
+    public float getProteins(int row) {
+        return proteins[row];
+    }
+
+    public float getCarbs(int row) {
+        return carbs[row];
+    }
+
+    public float getFat(int row) {
+        return fats[row];
+    }
+}
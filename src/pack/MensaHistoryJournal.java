@@ -0,0 +1,540 @@
+package pack;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code MensaHistoryJournal} class persists changes of the
+ * {@code MensaData.selectedMealList} as an append-only journal next to the
+ * snapshot file {@code data/selectedMealList.txt}.
+ * <p>
+ * Every added or removed meal is appended as a single record, {@code +;<meal>}
+ * or {@code -;<meal>}, where {@code <meal>} is a line in the format of the
+ * snapshot. Records are written to disk and synced in batches every
+ * {@code -Dmensa.journalSyncInterval} milliseconds (default 1000), so a crash
+ * loses at most the changes of one batch window. The journal is compacted into
+ * a new snapshot every {@code -Dmensa.journalCompactInterval} seconds (default
+ * 600), once it holds more than {@link #COMPACT_THRESHOLD} records and when the
+ * journal is closed. Snapshots ending in {@code .bin} are written in the binary
+ * format of {@code MensaBinaryHistory}.
+ * <p>
+ * All changes of the selectedMealList must be made while holding its monitor,
+ * which is what {@code MensaData.addSelectedMeal} and
+ * {@code MensaData.removeSelectedEntry} do, so that a compaction never sees a
+ * change that is not yet journaled.
+ * <p>
+ * A compaction holds that monitor only to copy the meals and to move the
+ * journal aside to {@code <journal>.old}; the snapshot is written afterwards
+ * to {@code <snapshot>.new} while the GUI keeps changing the history into a
+ * new journal. Renaming the old journal to {@code <journal>.done} commits the
+ * compaction, then the new snapshot is moved into place and the done journal
+ * is deleted. A done journal is never replayed, its records are in the new
+ * snapshot. After a crash the history is therefore read either from the old
+ * snapshot with the old and the new journal, if the compaction had not been
+ * committed, or from the new snapshot with the new journal, and no record is
+ * applied twice. {@link #getCurrentSnapshotFile()} returns the snapshot to
+ * read; {@link #start()} completes a committed compaction.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaHistoryJournal {
+
+    /**
+     * The number of records after which the journal is compacted on the next
+     * sync.
+     */
+    public static final int COMPACT_THRESHOLD = 10000;
+
+    static final String HEADER = "mealDate;mealName;mealPrice;mealType;mealKcal;mealProteins;mealCarbs;mealFat;mealLocation";
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final File oldJournalFile;
+    private final File doneJournalFile;
+    private final File newSnapshotFile;
+    private final List<MensaData> meals;
+
+    // Allows only one compaction at a time, acquired before any other lock
+    private final Object compactionLock = new Object();
+
+    private Writer writer;
+    private FileOutputStream journalStream;
+    private int records;
+    private boolean dirty;
+    private ScheduledExecutorService timer;
+
+    /**
+     * Constructs a new {@code MensaHistoryJournal}.
+     *
+     * @param snapshotFile the snapshot file
+     * @param journalFile  the journal file
+     * @param meals        the journaled list, also used as the lock for changes
+     */
+    public MensaHistoryJournal(File snapshotFile, File journalFile, List<MensaData> meals) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+        this.oldJournalFile = new File(journalFile.getPath() + ".old");
+        this.doneJournalFile = new File(journalFile.getPath() + ".done");
+        this.newSnapshotFile = new File(snapshotFile.getPath() + ".new");
+        this.meals = meals;
+    }
+
+    /**
+     * Applies the records of the journal to the meals read from the
+     * {@link #getCurrentSnapshotFile() current snapshot}. The records of an old
+     * journal left behind by an interrupted compaction are applied first; a
+     * done journal is skipped, as its records are in the snapshot. A last record without its line break, as left behind
+     * by a crash in the middle of a write, is ignored.
+     *
+     * A removed meal is looked up among the entries of its date only.
+     *
+     * @param history the meals read from the snapshot
+     */
+    public void replay(MensaHistory history) {
+        int replayed = replay(new RecordHandler() {
+            @Override
+            public void added(MensaData meal) {
+                history.add(meal);
+            }
+
+            @Override
+            public void removed(MensaData meal) {
+                history.removeFirstEqual(meal);
+            }
+        });
+        records = replayed;
+        System.out.println("Journal eingelesen: " + replayed + " Einträge");
+    }
+
+    /**
+     * Passes the records of the journal to a handler in the order they were
+     * written, the records of an old journal first, without keeping the meals.
+     * A done journal is skipped. A last record without its line break is
+     * ignored.
+     *
+     * @param handler the handler of the records
+     * @return the number of passed records
+     */
+    public int replay(RecordHandler handler) {
+        return replay(oldJournalFile, handler) + replay(journalFile, handler);
+    }
+
+    /**
+     * Passes the records of a journal file to a handler. A record is only
+     * complete once its line break has been written, as the line break is the
+     * last character of every record; a record cut off by a crash may still
+     * parse as a valid meal with wrong values, so the unterminated rest of the
+     * file is dropped.
+     *
+     * @param file    the journal file
+     * @param handler the handler of the records
+     * @return the number of passed records
+     */
+    private static int replay(File file, RecordHandler handler) {
+        if (!file.isFile()) {
+            return 0;
+        }
+        int replayed = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            StringBuilder record = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (c != '\n') {
+                    record.append((char) c);
+                    continue;
+                }
+                String line = record.toString();
+                record.setLength(0);
+                if (line.length() < 2 || line.charAt(1) != ';') {
+                    continue;
+                }
+                MensaData meal;
+                try {
+                    meal = MensaData.fromCsvLine(line.substring(2));
+                } catch (IllegalArgumentException e) {
+                    continue; // Malformed record
+                }
+                if (meal == null) {
+                    continue;
+                }
+                if (line.charAt(0) == '+') {
+                    handler.added(meal);
+                } else if (line.charAt(0) == '-') {
+                    handler.removed(meal);
+                }
+                replayed++;
+            }
+            if (record.length() > 0) {
+                System.out.println("Unvollständiger Eintrag am Ende von " + file.getName() + " verworfen");
+            }
+        } catch (IOException e) {
+            System.out.println("Journal konnte nicht gelesen werden: " + e.getMessage());
+        }
+        return replayed;
+    }
+
+    /**
+     * Completes a committed compaction, opens the journal for appending and
+     * starts the periodic sync and compaction. Calling it again has no effect.
+     * The history has to be read before.
+     *
+     * @throws IOException if the journal cannot be opened
+     */
+    public synchronized void start() throws IOException {
+        if (timer != null) {
+            return;
+        }
+        finishCompaction();
+        openJournal(true);
+
+        long syncInterval = Long.getLong("mensa.journalSyncInterval", 1000);
+        long compactInterval = Long.getLong("mensa.journalCompactInterval", 600);
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mensa-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::syncQuietly, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        timer.scheduleWithFixedDelay(this::compactQuietly, compactInterval, compactInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Appends the addition of a meal. Must be called while holding the monitor
+     * of the journaled list, right after the meal has been added.
+     *
+     * @param meal the added meal
+     */
+    public void added(MensaData meal) {
+        append('+', meal);
+    }
+
+    /**
+     * Appends the removal of a meal. Must be called while holding the monitor
+     * of the journaled list, right after the meal has been removed.
+     *
+     * @param meal the removed meal
+     */
+    public void removed(MensaData meal) {
+        append('-', meal);
+    }
+
+    /**
+     * Appends a record to the write buffer. It reaches the disk with the next
+     * sync.
+     *
+     * @param operation {@code +} or {@code -}
+     * @param meal      the changed meal
+     */
+    private synchronized void append(char operation, MensaData meal) {
+        if (writer == null) {
+            return; // Not started, the change is persisted with the next snapshot
+        }
+        try {
+            writer.write(operation + ";" + meal.toCsvLine() + "\n");
+            records++;
+            dirty = true;
+        } catch (IOException e) {
+            System.out.println("Journal konnte nicht geschrieben werden: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the buffered records to disk and forces them to the storage
+     * device. Compacts the journal once it has grown beyond
+     * {@link #COMPACT_THRESHOLD} records.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public void sync() throws IOException {
+        synchronized (this) {
+            if (writer == null || !dirty) {
+                return;
+            }
+            writer.flush();
+            journalStream.getFD().sync();
+            dirty = false;
+            if (records <= COMPACT_THRESHOLD) {
+                return;
+            }
+        }
+        compact();
+    }
+
+    /**
+     * Writes the current meals to a new snapshot and empties the journal.
+     * The snapshot is written to {@code <snapshot>.new} first. Renaming the old
+     * journal to {@code <journal>.done} commits the compaction, then the new
+     * snapshot is moved into place and the done journal is deleted. A crash
+     * before the commit leaves the old snapshot with the old journal, a crash
+     * after it the new snapshot, whose records are not replayed again. The
+     * history is only locked while the meals are copied and the journal is
+     * moved aside, not while the snapshot is written.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            finishCompaction(); // A done journal left behind must not be overwritten
+            List<MensaData> snapshot;
+            synchronized (meals) { // Keeps the meals and the journal in step
+                synchronized (this) {
+                    snapshot = new ArrayList<>(meals);
+                    rotateJournal();
+                }
+            }
+            writeSnapshot(snapshot);
+
+            // The commit point: from now on the records of the old journal are read from the new snapshot only
+            if (oldJournalFile.isFile()) {
+                Files.move(oldJournalFile.toPath(), doneJournalFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.createFile(doneJournalFile.toPath());
+            }
+            finishCompaction();
+        }
+    }
+
+    /**
+     * Completes a committed compaction: moves the new snapshot into place, if
+     * it is not yet, and deletes the done journal, whose records it holds.
+     * Does nothing if there is no done journal.
+     *
+     * @throws IOException if the snapshot cannot be moved
+     */
+    private void finishCompaction() throws IOException {
+        if (!doneJournalFile.isFile()) {
+            return;
+        }
+        if (newSnapshotFile.isFile()) {
+            Files.move(newSnapshotFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.delete(doneJournalFile.toPath());
+    }
+
+    /**
+     * Moves the records of the journal to the old journal and opens an empty
+     * journal. The records are synced first, as the old journal has to hold
+     * every change that is not in the snapshot yet.
+     *
+     * @throws IOException if the journal cannot be moved
+     */
+    private void rotateJournal() throws IOException {
+        if (writer != null) {
+            writer.flush();
+            journalStream.getFD().sync();
+            writer.close();
+        }
+        if (journalFile.isFile()) {
+            if (oldJournalFile.isFile()) {
+                // Left behind by an interrupted compaction, keep both
+                Files.write(oldJournalFile.toPath(), Files.readAllBytes(journalFile.toPath()),
+                        StandardOpenOption.APPEND);
+                Files.delete(journalFile.toPath());
+            } else {
+                Files.move(journalFile.toPath(), oldJournalFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        if (writer != null) {
+            openJournal(false);
+        }
+        records = 0;
+        dirty = false;
+    }
+
+    /**
+     * Stops the periodic tasks and compacts the journal.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (timer != null) {
+                timer.shutdown();
+                timer = null;
+            }
+        }
+        compact();
+        synchronized (this) {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        }
+    }
+
+    /**
+     * Writes the new snapshot file and forces it to the storage device. It
+     * replaces the snapshot once the compaction is committed.
+     *
+     * @param snapshot the meals to write
+     * @throws IOException if the snapshot cannot be written
+     */
+    private void writeSnapshot(List<MensaData> snapshot) throws IOException {
+        Files.createDirectories(newSnapshotFile.getAbsoluteFile().getParentFile().toPath());
+        if (isBinary()) {
+            MensaBinaryHistory.write(snapshot, newSnapshotFile);
+            try (FileChannel channel = FileChannel.open(newSnapshotFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        } else {
+            writeTextSnapshot(snapshot, newSnapshotFile);
+        }
+    }
+
+    /**
+     * Writes a snapshot in the semicolon separated text format.
+     *
+     * @param snapshot the meals to write
+     * @param temp     the file to write to
+     * @throws IOException if the snapshot cannot be written
+     */
+    private static void writeTextSnapshot(List<MensaData> snapshot, File temp) throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(temp);
+                Writer snapshotWriter = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            snapshotWriter.write(HEADER + "\n");
+            for (MensaData meal : snapshot) {
+                // Write each meal's data to a line in the file
+                snapshotWriter.write(meal.toCsvLine() + "\n");
+            }
+            snapshotWriter.flush();
+            stream.getFD().sync();
+        }
+    }
+
+    /**
+     * Returns whether the snapshot is stored in the binary format of
+     * {@code MensaBinaryHistory}, which is the case for files ending in
+     * {@code .bin}.
+     *
+     * @return {@code true} if the snapshot is binary
+     */
+    public boolean isBinary() {
+        return snapshotFile.getName().endsWith(".bin");
+    }
+
+    /**
+     * Opens the journal file for writing.
+     *
+     * @param append whether to keep the existing records
+     * @throws IOException if the journal cannot be opened
+     */
+    private void openJournal(boolean append) throws IOException {
+        if (append) {
+            dropTornRecord();
+        }
+        journalStream = new FileOutputStream(journalFile, append);
+        writer = new BufferedWriter(new OutputStreamWriter(journalStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Cuts off a last record without its line break, which the replay has
+     * ignored, so that the next record does not continue it on the same line.
+     *
+     * @throws IOException if the journal cannot be changed
+     */
+    private void dropTornRecord() throws IOException {
+        if (!journalFile.isFile()) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            long end = file.length();
+            while (end > 0) {
+                file.seek(end - 1);
+                if (file.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < file.length()) {
+                file.setLength(end);
+            }
+        }
+    }
+
+    /**
+     * Runs {@link #sync()} from the timer and reports failures.
+     */
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.out.println("Journal konnte nicht gespeichert werden: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs {@link #compact()} from the timer and reports failures.
+     */
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException e) {
+            System.out.println("Historie konnte nicht gespeichert werden: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the snapshot the history has to be read from: the new snapshot
+     * of a committed compaction that has not been moved into place yet, or
+     * else the snapshot file.
+     *
+     * @return the snapshot to read
+     */
+    public File getCurrentSnapshotFile() {
+        return doneJournalFile.isFile() && newSnapshotFile.isFile() ? newSnapshotFile : snapshotFile;
+    }
+
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public File getJournalFile() {
+        return journalFile;
+    }
+
+    public File getOldJournalFile() {
+        return oldJournalFile;
+    }
+
+    public File getDoneJournalFile() {
+        return doneJournalFile;
+    }
+
+    public File getNewSnapshotFile() {
+        return newSnapshotFile;
+    }
+
+    /**
+     * The {@code RecordHandler} interface receives the records of a journal
+     * when it is replayed.
+     */
+    public interface RecordHandler {
+
+        /**
+         * Called for a record of an added meal.
+         *
+         * @param meal the added meal
+         */
+        void added(MensaData meal);
+
+        /**
+         * Called for a record of a removed meal. The history contained an
+         * equal meal when it was removed.
+         *
+         * @param meal the removed meal
+         */
+        void removed(MensaData meal);
+    }
+}
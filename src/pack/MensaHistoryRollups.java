@@ -0,0 +1,249 @@
+package pack;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * The {@code MensaHistoryRollups} class is an index of pre-aggregated totals
+ * of the meal history per day, per week and per month. Adding or removing a
+ * meal updates one bucket of every granularity, so the index never has to be
+ * rebuilt while the program runs. It is built once after the history has
+ * been read, from the {@code MensaHistoryColumns}.
+ * <p>
+ * Each bucket is a {@code MensaHistoryTotals} keyed by the first day of its
+ * period: the day itself, the Monday of the week or the first of the month.
+ * Totals over an arbitrary range of days are combined from whole months and
+ * the days at both ends, so they touch at most a few dozen buckets no matter
+ * how many years the history spans.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaHistoryRollups {
+
+    /**
+     * The length of the periods of a rollup.
+     */
+    public enum Granularity {
+        DAY("Tag"), WEEK("Woche"), MONTH("Monat");
+
+        private final String label;
+
+        Granularity(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Returns the first day of the period a date belongs to.
+         *
+         * @param date the date
+         * @return the key of the bucket of the date
+         */
+        public LocalDate periodStart(LocalDate date) {
+            switch (this) {
+                case WEEK:
+                    return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH:
+                    return date.withDayOfMonth(1);
+                default:
+                    return date;
+            }
+        }
+
+        /**
+         * Returns the first day of the period following the one starting at
+         * the given date.
+         *
+         * @param start the first day of a period
+         * @return the first day of the next period
+         */
+        public LocalDate nextPeriodStart(LocalDate start) {
+            switch (this) {
+                case WEEK:
+                    return start.plusWeeks(1);
+                case MONTH:
+                    return start.plusMonths(1);
+                default:
+                    return start.plusDays(1);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final Map<Granularity, NavigableMap<LocalDate, MensaHistoryTotals>> rollups = new EnumMap<>(
+            Granularity.class);
+
+    /**
+     * Constructs a new, empty {@code MensaHistoryRollups} index.
+     */
+    public MensaHistoryRollups() {
+        for (Granularity granularity : Granularity.values()) {
+            rollups.put(granularity, new TreeMap<>());
+        }
+    }
+
+    /**
+     * Replaces the content of the index with the meals in the columns. The
+     * rows are summed per epoch day first, then every day is added to its
+     * buckets once.
+     *
+     * @param columns the columns of the history
+     */
+    public void rebuild(MensaHistoryColumns columns) {
+        for (NavigableMap<LocalDate, MensaHistoryTotals> buckets : rollups.values()) {
+            buckets.clear();
+        }
+        Map<Integer, MensaHistoryTotals> days = new HashMap<>();
+        for (int row = 0; row < columns.size(); row++) {
+            days.computeIfAbsent(columns.getEpochDay(row), day -> new MensaHistoryTotals()).add(columns, row);
+        }
+        for (Map.Entry<Integer, MensaHistoryTotals> day : days.entrySet()) {
+            add(LocalDate.ofEpochDay(day.getKey()), day.getValue());
+        }
+    }
+
+    /**
+     * Adds a meal to the buckets of its date.
+     *
+     * @param meal the added meal
+     */
+    public void add(MensaData meal) {
+        add(meal, LocalDate.parse(meal.getMealDate(), MensaData.formatter));
+    }
+
+    /**
+     * Adds a meal to the buckets of a date that has already been parsed.
+     *
+     * @param meal the added meal
+     * @param date the date of the meal
+     */
+    public void add(MensaData meal, LocalDate date) {
+        for (Granularity granularity : Granularity.values()) {
+            rollups.get(granularity).computeIfAbsent(granularity.periodStart(date), key -> new MensaHistoryTotals())
+                    .add(meal);
+        }
+    }
+
+    /**
+     * Adds the totals of several meals of the same date to the buckets of that
+     * date at once.
+     *
+     * @param date   the date of the meals
+     * @param totals the totals of the meals
+     */
+    public void add(LocalDate date, MensaHistoryTotals totals) {
+        for (Granularity granularity : Granularity.values()) {
+            rollups.get(granularity).computeIfAbsent(granularity.periodStart(date), key -> new MensaHistoryTotals())
+                    .add(totals);
+        }
+    }
+
+    /**
+     * Removes a meal from the buckets of its date. Buckets left without meals
+     * are dropped.
+     *
+     * @param meal the removed meal
+     */
+    public void remove(MensaData meal) {
+        remove(meal, LocalDate.parse(meal.getMealDate(), MensaData.formatter));
+    }
+
+    /**
+     * Removes a meal from the buckets of a date that has already been parsed.
+     * Buckets left without meals are dropped.
+     *
+     * @param meal the removed meal
+     * @param date the date of the meal
+     */
+    public void remove(MensaData meal, LocalDate date) {
+        for (Granularity granularity : Granularity.values()) {
+            NavigableMap<LocalDate, MensaHistoryTotals> buckets = rollups.get(granularity);
+            LocalDate key = granularity.periodStart(date);
+            MensaHistoryTotals bucket = buckets.get(key);
+            if (bucket == null) {
+                continue;
+            }
+            bucket.remove(meal);
+            if (bucket.isEmpty()) {
+                buckets.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the non-empty buckets of a granularity, ordered by date.
+     *
+     * @param granularity the length of the periods
+     * @return an unmodifiable view keyed by the first day of each period
+     */
+    public NavigableMap<LocalDate, MensaHistoryTotals> getRollup(Granularity granularity) {
+        return Collections.unmodifiableNavigableMap(rollups.get(granularity));
+    }
+
+    /**
+     * Returns the non-empty buckets of a granularity whose periods start
+     * within a range.
+     *
+     * @param granularity the length of the periods
+     * @param from        the first day of the range, inclusive
+     * @param to          the last day of the range, inclusive
+     * @return an unmodifiable view keyed by the first day of each period
+     */
+    public NavigableMap<LocalDate, MensaHistoryTotals> getRollup(Granularity granularity, LocalDate from,
+            LocalDate to) {
+        return Collections.unmodifiableNavigableMap(rollups.get(granularity).subMap(from, true, to, true));
+    }
+
+    /**
+     * Sums up the meals of a range of days. Whole months are taken from the
+     * monthly buckets, the remaining days at the ends of the range from the
+     * daily buckets.
+     *
+     * @param from the first day of the range, inclusive
+     * @param to   the last day of the range, inclusive
+     * @return the totals of the range
+     */
+    public MensaHistoryTotals totals(LocalDate from, LocalDate to) {
+        MensaHistoryTotals totals = new MensaHistoryTotals();
+        if (to.isBefore(from)) {
+            return totals;
+        }
+        LocalDate firstMonth = Granularity.MONTH.periodStart(from);
+        if (!firstMonth.equals(from)) {
+            firstMonth = firstMonth.plusMonths(1);
+        }
+        LocalDate endMonth = Granularity.MONTH.periodStart(to.plusDays(1)); // Exclusive
+
+        if (!firstMonth.isBefore(endMonth)) {
+            addAll(totals, rollups.get(Granularity.DAY).subMap(from, true, to, true));
+            return totals;
+        }
+        addAll(totals, rollups.get(Granularity.DAY).subMap(from, true, firstMonth, false));
+        addAll(totals, rollups.get(Granularity.MONTH).subMap(firstMonth, true, endMonth, false));
+        addAll(totals, rollups.get(Granularity.DAY).subMap(endMonth, true, to, true));
+        return totals;
+    }
+
+    /**
+     * Adds the totals of all given buckets.
+     *
+     * @param totals  the totals to add to
+     * @param buckets the buckets to add
+     */
+    private static void addAll(MensaHistoryTotals totals, Map<LocalDate, MensaHistoryTotals> buckets) {
+        for (MensaHistoryTotals bucket : buckets.values()) {
+            totals.add(bucket);
+        }
+    }
+}
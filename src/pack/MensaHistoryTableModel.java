@@ -0,0 +1,134 @@
+package pack;
+
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/**
+ * The {@code MensaHistoryTableModel} class is the table model of the meal
+ * history. It does not copy the meals into rows but reads the cells straight
+ * from the {@code MensaData.selectedMealList}, so opening the history costs
+ * nothing per meal until a row is painted. Numbers are returned as
+ * {@code Float} and formatted with their unit by a {@link UnitRenderer} only
+ * when they are shown.
+ * <p>
+ * Every row stands for an entry of the history with a stable id, so an entry
+ * is removed exactly even if the same dish was selected more than once. The
+ * model must only be used on the Event Dispatch Thread. Registered as a
+ * {@code MensaDataListener}, it notifies the table of every single row that is
+ * added to or removed from the history.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaHistoryTableModel extends AbstractTableModel implements MensaDataListener {
+
+    private static final String[] COLUMN_NAMES = { "Datum", "Gericht", "Preis", "Kalorien", "Proteine",
+            "Kohlenhydrate" };
+
+    /**
+     * The units shown behind the values of the columns.
+     */
+    static final String[] COLUMN_UNITS = { "", "", " €", " kcal", " g", " g" };
+
+    @Override
+    public int getRowCount() {
+        return MensaData.selectedMealList.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column < 2 ? String.class : Float.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        MensaData meal = getMeal(row);
+        switch (column) {
+            case 0:
+                return meal.getMealDate();
+            case 1:
+                return meal.getMealName();
+            case 2:
+                return meal.getMealPrice();
+            case 3:
+                return meal.getMealKcal();
+            case 4:
+                return meal.getMealProteins();
+            default:
+                return meal.getMealCarbs();
+        }
+    }
+
+    /**
+     * Returns the meal shown in a row.
+     *
+     * @param row the index of the row
+     * @return the meal
+     */
+    public MensaData getMeal(int row) {
+        return MensaData.selectedMealList.get(row);
+    }
+
+    /**
+     * Returns the id of the history entry shown in a row.
+     *
+     * @param row the index of the row
+     * @return the id of the entry
+     */
+    public int getId(int row) {
+        return MensaData.selectedMealList.getId(row);
+    }
+
+    /**
+     * Removes an entry from the history. The table is notified through
+     * {@link #mealRemoved(int, MensaData, int)}.
+     *
+     * @param id the id of the entry
+     * @return the removed meal, or {@code null} if there is no entry with the id
+     */
+    public MensaData removeEntry(int id) {
+        return MensaData.removeSelectedEntry(id);
+    }
+
+    @Override
+    public void mealAdded(int id, MensaData meal, int index) {
+        fireTableRowsInserted(index, index);
+    }
+
+    @Override
+    public void mealRemoved(int id, MensaData meal, int index) {
+        fireTableRowsDeleted(index, index);
+    }
+
+    /**
+     * The {@code UnitRenderer} class shows a number followed by its unit.
+     */
+    public static class UnitRenderer extends DefaultTableCellRenderer {
+
+        private final String unit;
+
+        /**
+         * Constructs a new {@code UnitRenderer}.
+         *
+         * @param unit the unit shown behind the value, including a leading space
+         */
+        public UnitRenderer(String unit) {
+            this.unit = unit;
+        }
+
+        @Override
+        protected void setValue(Object value) {
+            setText(value == null ? "" : value + unit);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package pack;
+
+/**
+ * The {@code MensaHistoryTotals} class maintains the cumulative values of the
+ * meal history shown by the overview. Adding or removing a meal updates the
+ * totals in constant time, so reading them never walks the history.
+ * <p>
+ * The sums are kept as compensated (Neumaier) sums in {@code double}, so the
+ * rounding errors of many additions and removals do not add up over large
+ * histories. After the history has been read, the totals are rebuilt from the
+ * {@code MensaHistoryColumns} one column at a time.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaHistoryTotals {
+
+    private final Sum kcal = new Sum();
+    private final Sum proteins = new Sum();
+    private final Sum carbs = new Sum();
+    private final Sum fat = new Sum();
+    private final Sum price = new Sum();
+    private int veggieCount;
+    private int count;
+
+    /**
+     * Replaces the totals with the totals of the meals in the columns.
+     *
+     * @param columns the columns of the history
+     */
+    public void rebuild(MensaHistoryColumns columns) {
+        kcal.reset();
+        proteins.reset();
+        carbs.reset();
+        fat.reset();
+        price.reset();
+        int size = columns.size();
+        for (int row = 0; row < size; row++) {
+            kcal.add(columns.getKcal(row));
+        }
+        for (int row = 0; row < size; row++) {
+            proteins.add(columns.getProteins(row));
+        }
+        for (int row = 0; row < size; row++) {
+            carbs.add(columns.getCarbs(row));
+        }
+        for (int row = 0; row < size; row++) {
+            fat.add(columns.getFat(row));
+        }
+        for (int row = 0; row < size; row++) {
+            price.add(columns.getPrice(row));
+        }
+        veggieCount = columns.countVeggie();
+        count = size;
+    }
+
+    /**
+     * Adds a meal to the totals.
+     *
+     * @param meal the added meal
+     */
+    public void add(MensaData meal) {
+        update(meal, 1);
+    }
+
+    /**
+     * Removes a meal from the totals.
+     *
+     * @param meal the removed meal
+     */
+    public void remove(MensaData meal) {
+        update(meal, -1);
+    }
+
+    /**
+     * Adds a row of the history columns to the totals.
+     *
+     * @param columns the columns of the history
+     * @param row     the row of the meal
+     */
+    void add(MensaHistoryColumns columns, int row) {
+        kcal.add(columns.getKcal(row));
+        proteins.add(columns.getProteins(row));
+        carbs.add(columns.getCarbs(row));
+        fat.add(columns.getFat(row));
+        price.add(columns.getPrice(row));
+        if (MensaHistoryColumns.isVeggie(columns.getTypeCode(row))) {
+            veggieCount++;
+        }
+        count++;
+    }
+
+    /**
+     * Adds the totals of other meals to these totals.
+     *
+     * @param other the totals to add
+     */
+    public void add(MensaHistoryTotals other) {
+        kcal.add(other.kcal);
+        proteins.add(other.proteins);
+        carbs.add(other.carbs);
+        fat.add(other.fat);
+        price.add(other.price);
+        veggieCount += other.veggieCount;
+        count += other.count;
+    }
+
+    /**
+     * Returns whether no meals are counted.
+     *
+     * @return {@code true} if the totals are empty
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Adds a meal to or subtracts it from all totals.
+     *
+     * @param meal the meal
+     * @param sign {@code 1} to add, {@code -1} to subtract
+     */
+    private void update(MensaData meal, int sign) {
+        kcal.add(sign * meal.getMealKcal());
+        proteins.add(sign * meal.getMealProteins());
+        carbs.add(sign * meal.getMealCarbs());
+        fat.add(sign * meal.getMealFat());
+        price.add(sign * meal.getMealPrice());
+        if (meal.isVeggie()) {
+            veggieCount += sign;
+        }
+        count += sign;
+    }
+
+    /**
+     * Returns the share of vegan and vegetarian meals.
+     *
+     * @return the share between {@code 0} and {@code 1}, {@code NaN} if the
+     *         history is empty
+     */
+    public float getVeggieShare() {
+        return (float) veggieCount / count;
+    }
+
+    public float getKcal() {
+        return (float) kcal.get();
+    }
+
+    public float getProteins() {
+        return (float) proteins.get();
+    }
+
+    public float getCarbs() {
+        return (float) carbs.get();
+    }
+
+    public float getFat() {
+        return (float) fat.get();
+    }
+
+    public float getPrice() {
+        return (float) price.get();
+    }
+
+    public int getVeggieCount() {
+        return veggieCount;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * The {@code Sum} class is a running sum with Neumaier compensation.
+     */
+    static class Sum {
+
+        private double sum;
+        private double compensation;
+
+        /**
+         * Adds a value and keeps track of the low-order bits lost by the addition.
+         *
+         * @param value the value to add
+         */
+        void add(double value) {
+            double t = sum + value;
+            if (Math.abs(sum) >= Math.abs(value)) {
+                compensation += (sum - t) + value;
+            } else {
+                compensation += (value - t) + sum;
+            }
+            sum = t;
+        }
+
+        void add(Sum other) {
+            add(other.sum);
+            add(other.compensation);
+        }
+
+        double get() {
+            return sum + compensation;
+        }
+
+        void reset() {
+            sum = 0;
+            compensation = 0;
+        }
+    }
+}
@@ -6,6 +6,9 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * The main class for the Mensa Food Tracker application.
@@ -15,90 +18,154 @@ import java.io.*;
  */
 public class MensaMain {
 
-    private static JFrame currentFrame;
-    static byte restartCounter = 0;
+    static final String PLAN_VIEW = "plan";
+    static final String HISTORY_VIEW = "history";
+    static final String OVERVIEW_VIEW = "overview";
+
+    private static MensaGUI mainFrame;
 
     /**
      * The main entry point of the program.
+     * Failures of the meal plan fetch never reach this method: the plan is
+     * loaded in the background and days that cannot be fetched keep showing
+     * their cached meals. If the history cannot be read or the GUI cannot be
+     * opened, the program ends instead of starting over, as reading everything
+     * again would fail the same way.
+     * With {@code report} as the first argument, a report of the history is
+     * written by {@code MensaReport} instead, without opening a window.
      *
      * @param args The command-line arguments.
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("report")) {
+            MensaReport.main(Arrays.copyOfRange(args, 1, args.length)); // Headless, no window is opened
+            return;
+        }
+        MensaData.addListener(MensaData.searchIndex); // Keep the search index up to date
         try {
             readFileData(); // Read meal data from a file
-            openMensaGUIPlan(); // Open the GUI for the meal plan
-            registerShutdownHook(); // Register a shutdown hook to write meal data to a file upon program
-                                    // termination
-        } catch (Exception e) {
-            restartCounter++;
-            if (restartCounter >= 5) {// Checks for fatal mistakes and forces shutdown
-                System.err.println("Programm wurde beendet.");
-                registerShutdownHook();
-            } else {
-                System.out.println("Ein Fehler ist aufgetreten: " + e.getMessage());
-                System.out.println("Das Programm wird neu gestartet.");
-                main(args); // Restart the program in case of an error
-            }
+        } catch (RuntimeException e) {
+            // The shutdown hook is not registered yet, so the history file stays untouched
+            System.err.println("Die Historie konnte nicht gelesen werden: " + e.getMessage());
+            System.err.println("Programm wurde beendet.");
+            System.exit(1);
         }
+        registerShutdownHook(); // Register a shutdown hook to compact the meal data journal upon program
+                                // termination
+        MensaData.planCache.removeBefore(MensaData.currentDate); // Drop the plans of days that have passed
+        try {
+            // Swing components must be created on the Event Dispatch Thread
+            SwingUtilities.invokeAndWait(MensaMain::openMensaGUIPlan); // Open the GUI for the meal plan
+        } catch (InvocationTargetException | InterruptedException e) {
+            Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            System.err.println("Ein Fehler ist aufgetreten: " + cause);
+            System.err.println("Programm wurde beendet.");
+            System.exit(1);
+        }
+        MensaData.refreshService.start(); // Keep the meal plan up to date while the program runs
     }
 
     /**
      * Reads meal data from a file and populates the selectedMealList.
+     * The changes recorded in the journal since the file was written are
+     * applied afterwards and the journal is opened for further changes.
+     * A binary snapshot is read through {@code MensaBinaryHistory}; if it does
+     * not exist yet, the text file is read and converted on the next compaction.
      */
     public static void readFileData() {
-        File file = new File("data/selectedMealList.txt");
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            if (file.createNewFile()) {
-                System.out.println("Datei erstellt: " + file.getName()); // Print a message indicating file creation
-            } else {
-                System.out.println("Datei existiert bereits."); // Print a message indicating that the file already
-                                                                // exists
-                for (int i = 0; i < MensaData.selectedMealList.size(); i++) {
-                    MensaData.selectedMealList.remove(i); // Clear the existing meal list
-                }
-                String line;
-                boolean isFirstLine = true;
-                while ((line = reader.readLine()) != null) {
-                    if (isFirstLine) {
-                        isFirstLine = false;
-                        continue;
-                    }
-                    String[] values = line.split(";");
-                    if (values.length == 8) {
-                        // Extract meal data from each line of the file
-                        String mealDate = values[0];
-                        String mealName = values[1];
-                        float mealPrice = Float.parseFloat(values[2]);
-                        MensaMealType mealType = MensaMealType.valueOf(values[3]);
-                        float mealKcal = Float.parseFloat(values[4]);
-                        float mealProteins = Float.parseFloat(values[5]);
-                        float mealCarbs = Float.parseFloat(values[6]);
-                        float mealFat = Float.parseFloat(values[7]);
-                        // Create a MensaData object with the extracted meal data
-                        MensaData mealData = new MensaData(mealDate, mealName, mealPrice, mealType, mealKcal,
-                                mealProteins, mealCarbs, mealFat);
-                        MensaData.selectedMealList.add(mealData); // Add the meal data to the selectedMealList
-                    }
+        File file = MensaData.historyJournal.getCurrentSnapshotFile();
+        synchronized (MensaData.selectedMealList) {
+            MensaData.selectedMealList.clear(); // Clear the existing meal list
+            if (MensaData.historyJournal.isBinary() && file.isFile()) {
+                try {
+                    MensaData.selectedMealList.addAll(MensaBinaryHistory.read(file));
+                } catch (IOException e) {
+                    System.out.println("Exception aufgetreten: " + e.getMessage());
                 }
+            } else {
+                readTextFile(MensaData.historyJournal.isBinary() ? new File("data/selectedMealList.txt") : file);
             }
+            MensaData.historyJournal.replay(MensaData.selectedMealList);
+            MensaData.historyColumns.rebuild(MensaData.selectedMealList);
+            MensaData.historyTotals.rebuild(MensaData.historyColumns);
+            MensaData.historyRollups.rebuild(MensaData.historyColumns);
+            MensaData.searchIndex.rebuild();
+        }
+        startJournal();
+    }
+
+    /**
+     * Reads a history file in the semicolon separated text format into the
+     * selectedMealList. Malformed lines are skipped and reported on the
+     * console.
+     *
+     * @param file the text history file
+     */
+    private static void readTextFile(File file) {
+        try (MensaCsvReader reader = new MensaCsvReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            System.out.println("Datei existiert bereits."); // Print a message indicating that the file already
+                                                            // exists
+            reader.skipLine(); // Skip the header line
+            MensaData mealData;
+            while ((mealData = reader.next()) != null) {
+                MensaData.selectedMealList.add(mealData); // Add the meal data to the selectedMealList
+            }
+            printProblems(file, reader);
+        } catch (FileNotFoundException e) {
+            System.out.println("Datei nicht gefunden, sie wird beim Speichern erstellt: " + file.getName());
+        } catch (IOException e) {
+            System.out.println("Exception aufgetreten: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints the lines a {@code MensaCsvReader} has skipped.
+     *
+     * @param file   the file that was read
+     * @param reader the reader of the file
+     */
+    static void printProblems(File file, MensaCsvReader reader) {
+        printProblems(file, reader, System.out);
+    }
+
+    /**
+     * Prints the lines a {@code MensaCsvReader} has skipped to the given
+     * stream.
+     *
+     * @param file   the file that was read
+     * @param reader the reader of the file
+     * @param out    the stream to print to
+     */
+    static void printProblems(File file, MensaCsvReader reader, PrintStream out) {
+        if (reader.getSkipped() == 0) {
+            return;
+        }
+        out.println(reader.getSkipped() + " fehlerhafte Zeilen in " + file.getName() + " übersprungen:");
+        for (MensaCsvReader.Problem problem : reader.getProblems()) {
+            out.println("  " + problem);
+        }
+    }
+
+    /**
+     * Opens the journal to record every further change of the selectedMealList.
+     */
+    private static void startJournal() {
+        try {
+            MensaData.historyJournal.start();
         } catch (IOException e) {
-            System.out.println("Exception aufgetreten. Datei wurde dennoch erstellt");
+            System.out.println("Journal konnte nicht geöffnet werden: " + e.getMessage());
         }
     }
 
     /**
      * Writes meal data to a file.
+     * The current selectedMealList is written as a new snapshot and the journal
+     * is emptied.
      */
     public static void writeFileData() {
-        File file = new File("data/selectedMealList.txt");
-        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)))) {
-            writer.write("mealDate;mealName;mealPrice;mealType;mealKcal;mealProteins;mealCarbs;mealFat" + "\n");
-            for (MensaData meal : MensaData.selectedMealList) {
-                // Write each meal's data to a line in the file
-                writer.write(meal.getMealDate() + ";" + meal.getMealName() + ";" + meal.getMealPrice() + ";"
-                        + meal.getMealType().toString() + ";" + meal.getMealKcal() + ";" + meal.getMealProteins()
-                        + ";" + meal.getMealCarbs() + ";" + meal.getMealFat() + "\n");
-            }
+        try {
+            MensaData.historyJournal.compact();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -106,47 +173,45 @@ public class MensaMain {
 
     /**
      * Opens the GUI for the meal plan {@code MensaGUIPlan}.
+     * Must be called on the Event Dispatch Thread, like the other
+     * {@code openMensaGUI} methods.
      */
     public static void openMensaGUIPlan() {
-        closeCurrentFrame(); // Close the currently open frame, if any
-        MensaGUIPlan frame = new MensaGUIPlan(); // Create a new instance of the GUI plan
-        frame.setTitle("Mensa Food Tracker");
-        frame.setSize(16 * 60, 9 * 60);// Sets screen size
-        frame.setMinimumSize(new Dimension(16 * 40, 9 * 40)); // Sets minimum screen size
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setVisible(true);
-        currentFrame = frame; // Set the current frame to the newly created frame
-        menuBarPressed(frame); // Add event listeners for menu bar actions
+        getMainFrame().showView(PLAN_VIEW, MensaGUIPlan::new); // Show the plan, created on first use
     }
 
     /**
      * Opens the GUI for meal history {@code MensaGUIHistory}.
      */
     public static void openMensaGUIHistory() {
-        closeCurrentFrame(); // Close the currently open frame, if any
-        MensaGUIHistory frame = new MensaGUIHistory(); // Create a new instance of the GUI historie
-        frame.setTitle("Mensa Food Tracker");
-        frame.setSize(16 * 60, 9 * 60);// Sets screen size
-        frame.setMinimumSize(new Dimension(16 * 40, 9 * 40)); // Sets minimum screen size
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setVisible(true);
-        currentFrame = frame; // Set the current frame to the newly created frame
-        menuBarPressed(frame); // Add event listeners for menu bar actions
+        getMainFrame().showView(HISTORY_VIEW, MensaGUIHistory::new); // Show the history, created on first use
     }
 
     /**
      * Opens the GUI for meal overview {@code MensaGUIOverview}.
      */
     public static void openMensaGUIOverview() {
-        closeCurrentFrame(); // Close the currently open frame, if any
-        MensaGUIOverview frame = new MensaGUIOverview(); // Create a new instance of the GUI uebersicht
-        frame.setTitle("Mensa Food Tracker");
-        frame.setSize(16 * 60, 9 * 60);// Sets screen size
-        frame.setMinimumSize(new Dimension(16 * 40, 9 * 40)); // Sets minimum screen size
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setVisible(true);
-        currentFrame = frame; // Set the current frame to the newly created frame
-        menuBarPressed(frame); // Add event listeners for menu bar actions
+        getMainFrame().showView(OVERVIEW_VIEW, MensaGUIOverview::new); // Show the overview, created on first use
+    }
+
+    /**
+     * Returns the main window, creating and showing it on first use. Must be
+     * called on the Event Dispatch Thread.
+     *
+     * @return the main window
+     */
+    public static MensaGUI getMainFrame() {
+        if (mainFrame == null) {
+            MensaGUI frame = new MensaGUI(); // Create the single main window
+            frame.setTitle("Mensa Food Tracker");
+            frame.setSize(16 * 60, 9 * 60);// Sets screen size
+            frame.setMinimumSize(new Dimension(16 * 40, 9 * 40)); // Sets minimum screen size
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            menuBarPressed(frame); // Add event listeners for menu bar actions
+            frame.setVisible(true);
+            mainFrame = frame;
+        }
+        return mainFrame;
     }
 
     /**
@@ -158,7 +223,6 @@ public class MensaMain {
         instance.menuEssensPlan.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                removeContent(instance.getContentPane()); // Remove the current content from the container
                 openMensaGUIPlan(); // Open the GUI plan
             }
         });
@@ -166,7 +230,6 @@ public class MensaMain {
         instance.menuHistorie.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                removeContent(instance.getContentPane()); // Remove the current content from the container
                 openMensaGUIHistory(); // Open the GUI historie
             }
         });
@@ -174,40 +237,24 @@ public class MensaMain {
         instance.menuUebersicht.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                removeContent(instance.getContentPane()); // Remove the current content from the container
                 openMensaGUIOverview(); // Open the GUI uebersicht
             }
         });
     }
 
-    /**
-     * Removes all components from a container.
-     *
-     * @param container The container to remove components from.
-     */
-    public static void removeContent(Container container) {
-        container.removeAll(); // Remove all components from the container
-        container.revalidate(); // Revalidate the container to reflect the changes
-        container.repaint(); // Repaint the container to update the display
-    }
-
-    /**
-     * Closes the current frame, if any.
-     */
-    public static void closeCurrentFrame() {
-        if (currentFrame != null) {
-            currentFrame.dispose(); // Dispose the current frame to close it
-        }
-    }
-
     /**
      * Registers a shutdown hook to write meal data to a file upon program
-     * termination.
+     * termination. Every change is already in the journal, the hook only
+     * compacts it into a new snapshot.
      */
     public static void registerShutdownHook() {
         Runtime.getRuntime().addShutdownHook(new Thread() {
             public void run() {
-                writeFileData(); // Write meal data to a file
+                try {
+                    MensaData.historyJournal.close(); // Write meal data to a file
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
         });
     }
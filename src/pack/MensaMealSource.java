@@ -0,0 +1,53 @@
+package pack;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.List;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaLocation;
+
+/**
+ * The {@code MensaMealSource} interface describes where the meals of a single
+ * mensa day come from. It decouples the fetch path from the
+ * {@code KITMensaScraper} so that the meal plan can also be loaded from a
+ * stand-in source, e.g. for measuring fetch times offline.
+ * 
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public interface MensaMealSource {
+
+    /**
+     * Fetches all meals offered at the given location on the given date.
+     * Implementations must be safe to call from several threads at once.
+     *
+     * @param location the mensa location
+     * @param date     the date to fetch the meals for
+     * @return the meals of that day, an empty list if the mensa is closed
+     */
+    List<MensaData> fetchMeals(MensaLocation location, LocalDate date);
+
+    /**
+     * Creates the meal source selected by the system property
+     * {@code mensa.source}. {@code stub} selects the {@link MensaStubSource},
+     * {@code record} the live {@link MensaScraperSource} recorded by a
+     * {@link MensaRecordingSource}, {@code replay} a {@link MensaReplaySource}
+     * and everything else the live {@link MensaScraperSource}.
+     *
+     * @return the configured meal source
+     */
+    static MensaMealSource fromSystemProperty() {
+        String source = System.getProperty("mensa.source", "");
+        switch (source) {
+            case "stub":
+                return new MensaStubSource();
+            case "record":
+                return new MensaRecordingSource(new MensaScraperSource(),
+                        new File(System.getProperty("mensa.recording", "data/recording")));
+            case "replay":
+                return new MensaReplaySource();
+            default:
+                return new MensaScraperSource();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package pack;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaLocation;
+
+/**
+ * The {@code MensaMealStore} class holds the fetched meal plans per mensa
+ * location indexed by date.
+ * Looking up the meals of a day or a single meal by date and name only touches
+ * the meals of that day instead of scanning every fetched meal.
+ * <p>
+ * The store is thread-safe without locks. The meals of a day are an immutable
+ * snapshot that is replaced as a whole, so a reader sees either the old or the
+ * new meals of a day, never a mixture, and never blocks a fetcher writing
+ * another day. Every location has its own concurrent map. Operations over
+ * several days, like {@link #getAllMeals()} and {@link #size()}, are weakly
+ * consistent while days are being written.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaMealStore {
+
+    // Filled once in the constructor and never changed afterwards
+    private final Map<MensaLocation, NavigableMap<LocalDate, Day>> locations = new EnumMap<>(MensaLocation.class);
+
+    /**
+     * Constructs a new, empty {@code MensaMealStore}.
+     */
+    public MensaMealStore() {
+        for (MensaLocation location : MensaLocation.values()) {
+            locations.put(location, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    /**
+     * Stores the meals of a day fetched just now, replacing the meals previously
+     * stored for that day.
+     *
+     * @param location the mensa location
+     * @param date     the date of the meals
+     * @param meals    the meals of that day in the order they are shown
+     */
+    public void putDay(MensaLocation location, LocalDate date, List<MensaData> meals) {
+        putDay(location, date, meals, System.currentTimeMillis());
+    }
+
+    /**
+     * Stores the meals of a day, replacing the meals previously stored for that
+     * day. Meals with the same name are stored only once.
+     *
+     * @param location  the mensa location
+     * @param date      the date of the meals
+     * @param meals     the meals of that day in the order they are shown
+     * @param fetchedAt the time the meals were fetched in epoch milliseconds
+     */
+    public void putDay(MensaLocation location, LocalDate date, List<MensaData> meals, long fetchedAt) {
+        locations.get(location).put(date, new Day(meals, fetchedAt));
+    }
+
+    /**
+     * Removes the meals of a day.
+     *
+     * @param location the mensa location
+     * @param date     the date of the meals
+     */
+    public void removeDay(MensaLocation location, LocalDate date) {
+        locations.get(location).remove(date);
+    }
+
+    /**
+     * Removes the meals of all days before the given date at every location.
+     *
+     * @param date the first date whose meals are kept
+     */
+    public void removeDaysBefore(LocalDate date) {
+        for (NavigableMap<LocalDate, Day> days : locations.values()) {
+            days.headMap(date).clear();
+        }
+    }
+
+    /**
+     * Returns the meals of a day.
+     *
+     * @param location the mensa location
+     * @param date     the date of the meals
+     * @return the meals of that day, an empty list if none are stored
+     */
+    public List<MensaData> getMeals(MensaLocation location, LocalDate date) {
+        Day day = getDay(location, date);
+        return day == null ? Collections.emptyList() : day.meals;
+    }
+
+    /**
+     * Finds a meal by date and name.
+     *
+     * @param location the mensa location
+     * @param date     the date of the meal
+     * @param mealName the name of the meal
+     * @return the meal of that day with that name, {@code null} if there is
+     *         none
+     */
+    public MensaData find(MensaLocation location, LocalDate date, String mealName) {
+        Day day = getDay(location, date);
+        return day == null ? null : day.mealsByName.get(mealName);
+    }
+
+    /**
+     * Returns when the meals of a day were fetched.
+     *
+     * @param location the mensa location
+     * @param date     the date of the meals
+     * @return the time in epoch milliseconds, {@code 0} if the day is not stored
+     */
+    public long getFetchedAt(MensaLocation location, LocalDate date) {
+        Day day = getDay(location, date);
+        return day == null ? 0 : day.fetchedAt;
+    }
+
+    /**
+     * Returns whether meals are stored for a day. A day on which the mensa is
+     * closed is stored with an empty list.
+     *
+     * @param location the mensa location
+     * @param date     the date to check
+     * @return {@code true} if the day has been stored
+     */
+    public boolean containsDay(MensaLocation location, LocalDate date) {
+        return getDay(location, date) != null;
+    }
+
+    /**
+     * Returns all stored meals ordered by location and date.
+     *
+     * @return a new list containing all meals
+     */
+    public List<MensaData> getAllMeals() {
+        List<MensaData> meals = new ArrayList<>();
+        for (NavigableMap<LocalDate, Day> days : locations.values()) {
+            for (Day day : days.values()) {
+                meals.addAll(day.meals);
+            }
+        }
+        return meals;
+    }
+
+    /**
+     * Removes all stored meals.
+     */
+    public void clear() {
+        for (NavigableMap<LocalDate, Day> days : locations.values()) {
+            days.clear();
+        }
+    }
+
+    /**
+     * Returns the number of stored meals.
+     *
+     * @return the number of meals over all days
+     */
+    public int size() {
+        int size = 0;
+        for (NavigableMap<LocalDate, Day> days : locations.values()) {
+            for (Day day : days.values()) {
+                size += day.meals.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the stored day of a location.
+     *
+     * @param location the mensa location
+     * @param date     the date of the meals
+     * @return the stored day, {@code null} if it is not stored
+     */
+    private Day getDay(MensaLocation location, LocalDate date) {
+        return locations.get(location).get(date);
+    }
+
+    /**
+     * The {@code Day} class holds the meals of one day together with their
+     * index by name. Meals with a name that occurred before are dropped, so
+     * the meals of a day are unique by name. A {@code Day} is never changed
+     * after it has been created.
+     */
+    private static class Day {
+
+        private final List<MensaData> meals;
+        private final Map<String, MensaData> mealsByName;
+        private final long fetchedAt;
+
+        Day(List<MensaData> meals, long fetchedAt) {
+            Map<String, MensaData> byName = new LinkedHashMap<>();
+            for (MensaData meal : meals) {
+                byName.putIfAbsent(meal.getMealName(), meal);
+            }
+            this.mealsByName = Collections.unmodifiableMap(byName);
+            this.meals = Collections.unmodifiableList(new ArrayList<>(byName.values()));
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package pack;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaLocation;
+
+/**
+ * The {@code MensaPlanCache} class stores fetched meal plans on disk, one file
+ * per location and day, so that the plan can be shown from disk on startup.
+ * <p>
+ * Every entry remembers when it was fetched. Past days never expire, today's
+ * plan expires after {@link #TODAY_TTL} and future plans after
+ * {@link #FUTURE_TTL}. Expired entries are still returned, it is up to the
+ * caller to show them while refetching. The entries of days before the date
+ * range are deleted with {@link #removeBefore(LocalDate)} on startup and
+ * whenever the range moves, so the cache does not grow day by day.
+ * <p>
+ * An entry file starts with a {@code fetchedAt;<epoch millis>} line followed by
+ * one line per meal in the format of {@code data/selectedMealList.txt}.
+ * Entries are written to a temporary file first and then moved into place, so a
+ * crash never leaves a half written entry behind.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaPlanCache {
+
+    /**
+     * The time after which today's plan is considered stale, in minutes from
+     * {@code -Dmensa.todayTtl} (default 60).
+     */
+    public static final Duration TODAY_TTL = Duration.ofMinutes(Long.getLong("mensa.todayTtl", 60));
+
+    /**
+     * The time after which the plan of a future day is considered stale, in
+     * minutes from {@code -Dmensa.futureTtl} (default 720).
+     */
+    public static final Duration FUTURE_TTL = Duration.ofMinutes(Long.getLong("mensa.futureTtl", 720));
+
+    private final File directory;
+
+    /**
+     * Constructs a new {@code MensaPlanCache} stored in the given directory.
+     *
+     * @param directory the cache directory, created on the first write
+     */
+    public MensaPlanCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Reads the cached plan of a day.
+     *
+     * @param location the mensa location
+     * @param date     the date of the plan
+     * @return the cached entry, {@code null} if the day is not cached or the
+     *         entry cannot be read
+     */
+    public Entry get(MensaLocation location, LocalDate date) {
+        File file = entryFile(location, date);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            if (header == null || !header.startsWith("fetchedAt;")) {
+                return null;
+            }
+            long fetchedAt = Long.parseLong(header.substring("fetchedAt;".length()));
+            List<MensaData> meals = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                MensaData meal = MensaData.fromCsvLine(line);
+                if (meal != null) {
+                    meals.add(meal);
+                }
+            }
+            return new Entry(date, fetchedAt, meals);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Cache-Eintrag konnte nicht gelesen werden: " + file.getName());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the plan of a day, replacing any previous entry. May be called from
+     * several threads at once for different days.
+     *
+     * @param location the mensa location
+     * @param date     the date of the plan
+     * @param meals    the fetched meals of that day
+     */
+    public void put(MensaLocation location, LocalDate date, List<MensaData> meals) {
+        File file = entryFile(location, date);
+        File parent = file.getParentFile();
+        try {
+            Files.createDirectories(parent.toPath());
+            File temp = File.createTempFile(date.toString(), ".tmp", parent);
+            try (Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+                writer.write("fetchedAt;" + System.currentTimeMillis() + "\n");
+                for (MensaData meal : meals) {
+                    writer.write(meal.toCsvLine() + "\n");
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Cache-Eintrag konnte nicht geschrieben werden: " + file.getName());
+        }
+    }
+
+    /**
+     * Returns the dates whose plans are stored for a location.
+     *
+     * @param location the mensa location
+     * @return the dates in ascending order
+     */
+    public List<LocalDate> getDates(MensaLocation location) {
+        List<LocalDate> dates = new ArrayList<>();
+        File[] files = new File(directory, location.name()).listFiles();
+        if (files == null) {
+            return dates;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".txt")) {
+                try {
+                    dates.add(LocalDate.parse(name.substring(0, name.length() - ".txt".length()),
+                            MensaData.formatter));
+                } catch (DateTimeParseException e) {
+                    // Not an entry
+                }
+            }
+        }
+        Collections.sort(dates);
+        return dates;
+    }
+
+    /**
+     * Deletes the entries of all locations for the days before a date.
+     *
+     * @param date the first date whose entries are kept
+     * @return the number of deleted entries
+     */
+    public int removeBefore(LocalDate date) {
+        int removed = 0;
+        for (MensaLocation location : MensaLocation.values()) {
+            for (LocalDate entryDate : getDates(location)) {
+                if (!entryDate.isBefore(date)) {
+                    break; // The dates are sorted
+                }
+                File file = entryFile(location, entryDate);
+                if (file.delete()) {
+                    removed++;
+                } else {
+                    System.out.println("Cache-Eintrag konnte nicht gelöscht werden: " + file.getName());
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns whether the plan of a day fetched at the given time should be
+     * refetched.
+     *
+     * @param date      the date of the plan
+     * @param fetchedAt the time the plan was fetched in epoch milliseconds
+     * @param today     the current date
+     * @return {@code true} if the plan has expired
+     */
+    public static boolean isStale(LocalDate date, long fetchedAt, LocalDate today) {
+        if (date.isBefore(today)) {
+            return false; // The plan of a past day does not change anymore
+        }
+        Duration ttl = date.isEqual(today) ? TODAY_TTL : FUTURE_TTL;
+        return System.currentTimeMillis() - fetchedAt > ttl.toMillis();
+    }
+
+    /**
+     * Returns the file of a cache entry.
+     *
+     * @param location the mensa location
+     * @param date     the date of the plan
+     * @return the entry file
+     */
+    private File entryFile(MensaLocation location, LocalDate date) {
+        return new File(new File(directory, location.name()), date.format(MensaData.formatter) + ".txt");
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * The {@code Entry} class represents the cached plan of one day.
+     */
+    public static class Entry {
+
+        private final LocalDate date;
+        private final long fetchedAt;
+        private final List<MensaData> meals;
+
+        /**
+         * Constructs a new {@code Entry}.
+         *
+         * @param date      the date of the plan
+         * @param fetchedAt the time the plan was fetched in epoch milliseconds
+         * @param meals     the meals of that day
+         */
+        public Entry(LocalDate date, long fetchedAt, List<MensaData> meals) {
+            this.date = date;
+            this.fetchedAt = fetchedAt;
+            this.meals = meals;
+        }
+
+        /**
+         * Returns whether the entry should be refetched.
+         *
+         * @param today the current date
+         * @return {@code true} if the entry has expired
+         */
+        public boolean isStale(LocalDate today) {
+            return MensaPlanCache.isStale(date, fetchedAt, today);
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public long getFetchedAt() {
+            return fetchedAt;
+        }
+
+        public List<MensaData> getMeals() {
+            return meals;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package pack;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingWorker;
+
+/**
+ * The {@code MensaPlanLoader} class fetches the meal plan in the background so
+ * that the event dispatch thread is never blocked by the scraper.
+ * The event dispatch thread only picks the days to load from the meals in
+ * memory. Days that are not stored yet are read from the
+ * {@code MensaPlanCache} in the background first; only days that are not
+ * cached or have expired are fetched. Every day, cached or fetched, is stored
+ * in the {@code MensaData.mealStore} on the event dispatch thread as soon as
+ * it arrives, which notifies the {@code MensaDataListener}s, so the plan view
+ * can show the first days while the rest is still loading.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaPlanLoader extends SwingWorker<MensaFetchEngine.Result, MensaPlanLoader.FetchedDay> {
+
+    private final List<MensaDay> days;
+    private final Set<MensaDay> stored;
+    private final boolean refresh;
+
+    // The days requested from the scraper, set in the background before the fetch
+    private volatile List<MensaDay> fetchedDays = Collections.emptyList();
+
+    /**
+     * Constructs a new {@code MensaPlanLoader} for the given days.
+     *
+     * @param days    the location and date pairs to load
+     * @param stored  the days among them whose meals are stored already
+     * @param refresh whether to fetch the days regardless of their expiry
+     */
+    private MensaPlanLoader(List<MensaDay> days, Set<MensaDay> stored, boolean refresh) {
+        this.days = days;
+        this.stored = stored;
+        this.refresh = refresh;
+    }
+
+    /**
+     * Starts loading the days of the date range that are not stored yet from
+     * the {@code MensaPlanCache} and fetching those that are missing or
+     * expired for all locations, both in the background. The fetched days are marked as pending until
+     * they arrive. Must be called on the event dispatch thread.
+     */
+    public static void start() {
+        start(false);
+    }
+
+    /**
+     * Starts fetching every day of the date range again, regardless of its
+     * expiry. Each day replaces the stored meals of that day as soon as it
+     * arrives, days that fail keep their previous meals. Days that are already
+     * being fetched are not requested twice. Must be called on the event
+     * dispatch thread.
+     */
+    public static void refresh() {
+        start(true);
+    }
+
+    /**
+     * Starts loading the days returned by {@code MensaData.daysToLoad}.
+     *
+     * @param refresh whether to refetch all days
+     */
+    private static void start(boolean refresh) {
+        List<MensaDay> days = MensaData.daysToLoad(refresh);
+        if (days.isEmpty()) {
+            return; // Every day is stored and up to date or already being fetched
+        }
+        Set<MensaDay> stored = new HashSet<>();
+        for (MensaDay day : days) {
+            if (MensaData.mealStore.containsDay(day.getLocation(), day.getDate())) {
+                stored.add(day);
+            }
+            MensaData.markPending(day); // Show the days as loading
+        }
+        new MensaPlanLoader(days, stored, refresh).execute();
+    }
+
+    /**
+     * Reads the days that are not stored yet from the cache and publishes them,
+     * then fetches the days that are not cached or have expired, writes each
+     * day to the cache and publishes it as soon as it arrives. Runs in a
+     * background thread.
+     *
+     * @return the result of the fetch
+     */
+    @Override
+    protected MensaFetchEngine.Result doInBackground() {
+        LocalDate today = LocalDate.now();
+        List<MensaDay> toFetch = new ArrayList<>();
+        for (MensaDay day : days) {
+            if (!stored.contains(day)) {
+                MensaPlanCache.Entry entry = MensaData.planCache.get(day.getLocation(), day.getDate());
+                if (entry != null) {
+                    boolean fetch = refresh || entry.isStale(today);
+                    publish(new FetchedDay(day, entry, fetch));
+                    if (!fetch) {
+                        continue; // Served from the cache
+                    }
+                }
+            }
+            toFetch.add(day);
+        }
+        fetchedDays = toFetch;
+        if (toFetch.isEmpty()) {
+            return null;
+        }
+        return MensaData.fetchEngine.fetch(toFetch, (day, meals) -> {
+            MensaData.planCache.put(day.getLocation(), day.getDate(), meals);
+            publish(new FetchedDay(day, meals));
+        });
+    }
+
+    /**
+     * Stores the published days on the event dispatch thread.
+     *
+     * @param publishedDays the days that arrived since the last call
+     */
+    @Override
+    protected void process(List<FetchedDay> publishedDays) {
+        for (FetchedDay publishedDay : publishedDays) {
+            if (publishedDay.cached != null) {
+                MensaData.addCachedDay(publishedDay.day, publishedDay.cached, publishedDay.fetching);
+            } else {
+                MensaData.addDay(publishedDay.day, publishedDay.meals);
+            }
+        }
+    }
+
+    /**
+     * Marks the days that could not be fetched as failed, so they are no longer
+     * shown as loading.
+     */
+    @Override
+    protected void done() {
+        try {
+            MensaFetchEngine.Result result = get();
+            if (result == null) {
+                return; // Every day was served from the cache
+            }
+            for (MensaDay day : result.getFailedDays()) {
+                MensaData.markFailed(day);
+            }
+            MensaData.printFetchResult(result, fetchedDays.size());
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println("Speiseplan konnte nicht geladen werden: " + e.getMessage());
+            for (MensaDay day : days) {
+                if (MensaData.pendingDays.contains(day)) {
+                    MensaData.markFailed(day);
+                }
+            }
+        }
+    }
+
+    /**
+     * The {@code FetchedDay} class holds the meals of one fetched or cached day
+     * until they are processed on the event dispatch thread.
+     */
+    static class FetchedDay {
+
+        private final MensaDay day;
+        private final List<MensaData> meals;
+        private final MensaPlanCache.Entry cached;
+        private final boolean fetching;
+
+        FetchedDay(MensaDay day, List<MensaData> meals) {
+            this.day = day;
+            this.meals = meals;
+            this.cached = null;
+            this.fetching = false;
+        }
+
+        FetchedDay(MensaDay day, MensaPlanCache.Entry cached, boolean fetching) {
+            this.day = day;
+            this.meals = cached.getMeals();
+            this.cached = cached;
+            this.fetching = fetching;
+        }
+    }
+}
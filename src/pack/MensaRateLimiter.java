@@ -0,0 +1,64 @@
+package pack;
+
+/**
+ * The {@code MensaRateLimiter} class limits how many requests are sent per
+ * second, across all mensa locations.
+ * <p>
+ * It is a token bucket: tokens are added at a fixed rate up to a maximum, and
+ * every request takes one. Instead of blocking, a request reserves the next
+ * token and is told how long to wait for it, so the caller can schedule the
+ * request without occupying a thread while it waits. The limiter is
+ * thread-safe.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaRateLimiter {
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final long intervalNanos;
+
+    // The time at which the next token is available; earlier if tokens are stored
+    private long nextFreeNanos;
+
+    /**
+     * Constructs a new {@code MensaRateLimiter}.
+     *
+     * @param permitsPerSecond the number of requests per second in the long run
+     * @param burst            the number of requests that may be sent at once
+     *                         after a quiet period
+     */
+    public MensaRateLimiter(double permitsPerSecond, int burst) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(burst, 1);
+        this.intervalNanos = (long) (1e9 / permitsPerSecond);
+        this.nextFreeNanos = System.nanoTime() - this.burst * intervalNanos;
+    }
+
+    /**
+     * Reserves a token for a request.
+     *
+     * @return the nanoseconds to wait before the request may be sent, {@code 0}
+     *         if it may be sent right away
+     */
+    public synchronized long reserve() {
+        long now = System.nanoTime();
+        // Tokens of a quiet period are stored up to the burst size
+        long earliest = now - (burst - 1) * intervalNanos;
+        if (nextFreeNanos < earliest) {
+            nextFreeNanos = earliest;
+        }
+        long wait = Math.max(nextFreeNanos - now, 0);
+        nextFreeNanos += intervalNanos;
+        return wait;
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+}
@@ -0,0 +1,63 @@
+package pack;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.List;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaLocation;
+
+/**
+ * The {@code MensaRecordingSource} class is a {@link MensaMealSource} that
+ * passes every request on to another source and records each answer on disk,
+ * so the same meal plan can be replayed later by a {@link MensaReplaySource}.
+ * <p>
+ * A recording is a directory in the format of the {@code MensaPlanCache}, one
+ * file per location and day; a day that is fetched again replaces its earlier
+ * answer. Failed requests are not recorded.
+ * <p>
+ * Select it with {@code -Dmensa.source=record}, it records the
+ * {@code KITMensaScraper} into the directory given by
+ * {@code -Dmensa.recording} (default {@code data/recording}).
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaRecordingSource implements MensaMealSource {
+
+    private final MensaMealSource source;
+    private final MensaPlanCache recording;
+
+    /**
+     * Constructs a new {@code MensaRecordingSource}.
+     *
+     * @param source    the source whose answers are recorded
+     * @param directory the directory of the recording, created on the first
+     *                  answer
+     */
+    public MensaRecordingSource(MensaMealSource source, File directory) {
+        this.source = source;
+        this.recording = new MensaPlanCache(directory);
+    }
+
+    /**
+     * Fetches the meals of one day from the recorded source and records them.
+     *
+     * @param location the mensa location
+     * @param date     the date to fetch the meals for
+     * @return the meals of that day, an empty list if the mensa is closed
+     */
+    @Override
+    public List<MensaData> fetchMeals(MensaLocation location, LocalDate date) {
+        List<MensaData> meals = source.fetchMeals(location, date);
+        recording.put(location, date, meals);
+        return meals;
+    }
+
+    public MensaMealSource getSource() {
+        return source;
+    }
+
+    public MensaPlanCache getRecording() {
+        return recording;
+    }
+}
@@ -0,0 +1,133 @@
+package pack;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * The {@code MensaRefreshService} class keeps the meal plan of a long running
+ * session up to date in the background.
+ * <p>
+ * At midnight it moves the date range of {@code MensaData} to the new day, so
+ * the past day disappears and a new day appears at the end. At a fixed
+ * interval it starts the {@code MensaPlanLoader}, which fetches every day whose
+ * plan has expired, today's plan after {@code MensaPlanCache.TODAY_TTL}, as
+ * well as the {@code MensaData.prefetchDays} after the range; the day that
+ * appears at midnight is therefore usually stored already. The check for a new
+ * day runs with every refresh too, so a missed midnight, for example while
+ * the computer was asleep, is caught up.
+ * <p>
+ * The timer thread never touches the meal plan itself, it hands every refresh
+ * to the event dispatch thread, which only starts the background fetch. The
+ * interval in minutes is set with {@code -Dmensa.refreshInterval} (default
+ * 15).
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaRefreshService {
+
+    // Waited after midnight before the range is moved, so the clock has surely passed it
+    private static final long MIDNIGHT_DELAY_MILLIS = 1000;
+
+    private final long intervalMillis;
+
+    private ScheduledExecutorService timer;
+
+    /**
+     * Constructs a new {@code MensaRefreshService} with the interval taken
+     * from the system properties. The service does nothing until it is started.
+     */
+    public MensaRefreshService() {
+        this(Long.getLong("mensa.refreshInterval", 15) * 60_000);
+    }
+
+    /**
+     * Constructs a new {@code MensaRefreshService}. The service does nothing
+     * until it is started.
+     *
+     * @param intervalMillis the time between two refreshes in milliseconds
+     */
+    public MensaRefreshService(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Starts refreshing the meal plan at the interval and moving the date range
+     * at midnight. Does nothing if the service is already running.
+     */
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mensa-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::refresh, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        scheduleMidnight();
+    }
+
+    /**
+     * Stops the service. A refresh already handed to the event dispatch thread
+     * still runs.
+     */
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    /**
+     * Schedules a refresh shortly after the next midnight, which schedules the
+     * following one.
+     */
+    private synchronized void scheduleMidnight() {
+        if (timer == null) {
+            return; // Stopped in the meantime
+        }
+        ZonedDateTime now = ZonedDateTime.now();
+        ZonedDateTime midnight = now.toLocalDate().plusDays(1).atStartOfDay(now.getZone());
+        long delay = Duration.between(now, midnight).toMillis() + MIDNIGHT_DELAY_MILLIS;
+        timer.schedule(() -> {
+            refresh();
+            scheduleMidnight();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hands a refresh to the event dispatch thread.
+     */
+    private void refresh() {
+        SwingUtilities.invokeLater(MensaRefreshService::update);
+    }
+
+    /**
+     * Moves the date range to today if a new day has begun and starts fetching
+     * the days that are missing or expired. Must be called on the event
+     * dispatch thread.
+     */
+    static void update() {
+        LocalDate today = LocalDate.now();
+        if (today.isAfter(MensaData.currentDate)) {
+            MensaData.moveWindow(today);
+            System.out.println("Neuer Tag, Speiseplan ab " + today.format(MensaData.formatter));
+        }
+        MensaPlanLoader.start();
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public synchronized boolean isRunning() {
+        return timer != null;
+    }
+}
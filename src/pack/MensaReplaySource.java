@@ -0,0 +1,204 @@
+package pack;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaLocation;
+
+/**
+ * The {@code MensaReplaySource} class is a {@link MensaMealSource} that answers
+ * from a recording made by a {@link MensaRecordingSource}, with injected
+ * latency and failures, for repeatable offline measurements of the whole
+ * fetch path.
+ * <p>
+ * The recording is read into memory once. It is replayed as if it repeated
+ * itself week after week: a requested date is moved by whole weeks into the
+ * recorded weeks, so a recording made some time ago still answers for every
+ * day of the current date range, however short it is, and keeps its weekends.
+ * A recording shorter than a week is repeated by its length instead. Days
+ * that are missing within the recording fail.
+ * <p>
+ * Every request sleeps for the latency plus a random jitter and then fails
+ * with the configured probability. The random decisions depend only on the
+ * seed, the day and how often that day has been requested before, not on the
+ * order in which threads run, so a run can be repeated exactly.
+ * <p>
+ * Select it with {@code -Dmensa.source=replay}. The recording is read from
+ * {@code -Dmensa.recording} (default {@code data/recording}); the latency and
+ * jitter in milliseconds are set with {@code -Dmensa.replayLatency} and
+ * {@code -Dmensa.replayJitter} (default 0), the failure probability with
+ * {@code -Dmensa.replayFailureRate} (default 0) and the seed with
+ * {@code -Dmensa.replaySeed} (default 0).
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaReplaySource implements MensaMealSource {
+
+    private final Map<MensaLocation, TreeMap<LocalDate, List<MensaData>>> days = new EnumMap<>(
+            MensaLocation.class);
+    // The first recorded day and the length of the repeated part of the recording
+    private final LocalDate first;
+    private final long periodDays;
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double failureRate;
+    private final long seed;
+
+    // How often each day has been requested, so that retries draw new decisions
+    private final Map<MensaDay, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new {@code MensaReplaySource} with the settings taken from
+     * the system properties.
+     */
+    public MensaReplaySource() {
+        this(new File(System.getProperty("mensa.recording", "data/recording")),
+                Long.getLong("mensa.replayLatency", 0), Long.getLong("mensa.replayJitter", 0),
+                Double.parseDouble(System.getProperty("mensa.replayFailureRate", "0")),
+                Long.getLong("mensa.replaySeed", 0));
+    }
+
+    /**
+     * Constructs a new {@code MensaReplaySource} and reads the recording.
+     *
+     * @param directory     the directory of the recording
+     * @param latencyMillis the minimum duration of a request in milliseconds
+     * @param jitterMillis  the maximum random duration added to a request
+     * @param failureRate   the probability of a request to fail, from 0 to 1
+     * @param seed          the seed of the random decisions
+     */
+    public MensaReplaySource(File directory, long latencyMillis, long jitterMillis, double failureRate, long seed) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.failureRate = failureRate;
+        this.seed = seed;
+
+        MensaPlanCache recording = new MensaPlanCache(directory);
+        LocalDate first = null;
+        LocalDate last = null;
+        for (MensaLocation location : MensaLocation.values()) {
+            TreeMap<LocalDate, List<MensaData>> recorded = new TreeMap<>();
+            for (LocalDate date : recording.getDates(location)) {
+                MensaPlanCache.Entry entry = recording.get(location, date);
+                if (entry != null) {
+                    recorded.put(date, entry.getMeals());
+                }
+            }
+            days.put(location, recorded);
+            if (!recorded.isEmpty() && (first == null || recorded.firstKey().isBefore(first))) {
+                first = recorded.firstKey();
+            }
+            if (!recorded.isEmpty() && (last == null || recorded.lastKey().isAfter(last))) {
+                last = recorded.lastKey();
+            }
+        }
+        if (first == null) {
+            System.out.println("Aufnahme ist leer: " + directory);
+        }
+        long recordedDays = first == null ? 1 : ChronoUnit.DAYS.between(first, last) + 1;
+        this.first = first;
+        this.periodDays = recordedDays < 7 ? recordedDays : recordedDays / 7 * 7; // Whole weeks keep the weekdays
+    }
+
+    /**
+     * Returns the recorded date a requested date is answered from.
+     *
+     * @param date the requested date
+     * @return the date within the recorded weeks on the same weekday
+     */
+    LocalDate recordedDate(LocalDate date) {
+        if (first == null) {
+            return date;
+        }
+        return first.plusDays(Math.floorMod(ChronoUnit.DAYS.between(first, date), periodDays));
+    }
+
+    /**
+     * Returns the recorded meals of one day after the injected latency.
+     *
+     * @param location the mensa location
+     * @param date     the date to fetch the meals for
+     * @return the meals of that day, an empty list if the mensa is closed
+     * @throws IllegalStateException if the request fails by injection or the
+     *                               day is not in the recording
+     */
+    @Override
+    public List<MensaData> fetchMeals(MensaLocation location, LocalDate date) {
+        MensaDay day = new MensaDay(location, date);
+        int request = requests.computeIfAbsent(day, d -> new AtomicInteger()).getAndIncrement();
+        SplittableRandom random = new SplittableRandom(seedOf(location, date, request));
+
+        long sleep = latencyMillis + (jitterMillis > 0 ? random.nextLong(jitterMillis + 1) : 0);
+        if (sleep > 0) {
+            try {
+                Thread.sleep(sleep); // Simulate the network round-trip
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (random.nextDouble() < failureRate) {
+            throw new IllegalStateException("Simulierter Fehler für " + day);
+        }
+
+        List<MensaData> recorded = days.get(location).get(recordedDate(date));
+        if (recorded == null) {
+            throw new IllegalStateException("Keine Aufnahme für " + day);
+        }
+        List<MensaData> meals = new ArrayList<>(recorded.size());
+        String mealDate = date.format(MensaData.formatter);
+        for (MensaData meal : recorded) {
+            meals.add(new MensaData(mealDate, meal.getDish(), meal.getMealPrice(), location));
+        }
+        return meals;
+    }
+
+    /**
+     * Returns the seed of the random decisions of a request. It is built from
+     * the ordinal of the location and the epoch day, not from hash codes, as
+     * the hash code of an enum constant differs from run to run.
+     *
+     * @param location the mensa location
+     * @param date     the requested date
+     * @param request  how often the day has been requested before
+     * @return the seed
+     */
+    private long seedOf(MensaLocation location, LocalDate date, int request) {
+        return seed + location.ordinal() * 0x9E3779B97F4A7C15L + date.toEpochDay() * 0xBF58476D1CE4E5B9L
+                + request * 0x94D049BB133111EBL;
+    }
+
+    public LocalDate getFirst() {
+        return first;
+    }
+
+    public long getPeriodDays() {
+        return periodDays;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getJitterMillis() {
+        return jitterMillis;
+    }
+
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+}
@@ -0,0 +1,457 @@
+package pack;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaLocation;
+import edu.kit.aifb.atks.mensascraper.lib.MensaMealType;
+
+/**
+ * The {@code MensaReport} class computes the nutrition totals of the overview
+ * without opening a window, so reports can be made on servers without a
+ * display.
+ * <p>
+ * History files are streamed in a single pass: every meal that passes the
+ * filters is added to the totals of its day and then dropped. The history is
+ * in date order, so the totals of a day are complete when the next day
+ * begins; they are then added to the overall totals and to the daily, weekly
+ * and monthly {@code MensaHistoryRollups} at once. The memory needed
+ * therefore grows with the number of days and dishes, not with the number of
+ * meals.
+ * Text files are read with a {@code MensaCsvReader}, binary files through
+ * {@code MensaBinaryHistory}. The records of a journal are
+ * applied on top; a removed meal is subtracted again.
+ * <p>
+ * It is run from the command line with
+ * {@code java -Djava.awt.headless=true pack.MensaReport [options] [files]} or
+ * {@code java pack.MensaMain report [options] [files]}. Without files the
+ * history of the application is read like on startup, including its journal.
+ * The options are {@code --format=csv|json} (default csv),
+ * {@code --granularity=day|week|month} (default the total only),
+ * {@code --from=<yyyy-MM-dd>} and {@code --to=<yyyy-MM-dd>} (inclusive),
+ * {@code --location=<locations>} and {@code --type=<meal types>}, both comma
+ * separated, and {@code --out=<file>} (default the standard output). Messages
+ * go to the standard error, so the report can be piped.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaReport implements MensaHistoryJournal.RecordHandler {
+
+    /**
+     * The file formats of a report.
+     */
+    public enum Format {
+        CSV, JSON
+    }
+
+    private static final String[] COLUMNS = { "period", "meals", "kcal", "proteins", "carbs", "fat", "price",
+            "veggieShare" };
+
+    // null if the range is open at that end
+    private final LocalDate from;
+    private final LocalDate to;
+
+    // null if all locations or types are counted
+    private final Set<MensaLocation> locations;
+    private final Set<MensaMealType> types;
+
+    private final MensaHistoryTotals totals = new MensaHistoryTotals();
+    private final MensaHistoryRollups rollups = new MensaHistoryRollups();
+    private long read;
+
+    // The meals of the current day not yet added to the totals and the rollups
+    private MensaHistoryTotals day = new MensaHistoryTotals();
+    private LocalDate dayDate;
+
+    // Meals of the same day share their date string, so it is only parsed when it changes
+    private String lastMealDate;
+    private LocalDate lastDate;
+
+    /**
+     * Constructs a new {@code MensaReport} that counts every meal.
+     */
+    public MensaReport() {
+        this(null, null, null, null);
+    }
+
+    /**
+     * Constructs a new {@code MensaReport} that only counts the meals passing
+     * the given filters.
+     *
+     * @param from      the first date counted, {@code null} for no limit
+     * @param to        the last date counted, {@code null} for no limit
+     * @param locations the locations counted, {@code null} for all
+     * @param types     the meal types counted, {@code null} for all
+     */
+    public MensaReport(LocalDate from, LocalDate to, Set<MensaLocation> locations, Set<MensaMealType> types) {
+        this.from = from;
+        this.to = to;
+        this.locations = locations;
+        this.types = types;
+    }
+
+    /**
+     * Reads a history file, in the binary format if its name ends in
+     * {@code .bin} and in the text format otherwise.
+     *
+     * @param file the history file
+     * @throws IOException if the file cannot be read
+     */
+    public void read(File file) throws IOException {
+        if (file.getName().endsWith(".bin")) {
+            readBinary(file);
+        } else {
+            readText(file);
+        }
+    }
+
+    /**
+     * Reads a history file in the text format including its header line.
+     * Malformed lines are skipped and reported on the standard error.
+     *
+     * @param file the text history file
+     * @throws IOException if the file cannot be read
+     */
+    public void readText(File file) throws IOException {
+        try (MensaCsvReader reader = new MensaCsvReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            reader.skipLine(); // Skip the header line
+            MensaData meal;
+            while ((meal = reader.next()) != null) {
+                added(meal);
+            }
+            MensaMain.printProblems(file, reader, System.err);
+        }
+    }
+
+    /**
+     * Reads a history file in the binary format. The dates are taken from the
+     * records as epoch days instead of being parsed.
+     *
+     * @param file the binary history file
+     * @throws IOException if the file cannot be read
+     */
+    public void readBinary(File file) throws IOException {
+        try (MensaBinaryHistory history = new MensaBinaryHistory(file)) {
+            int lastEpochDay = Integer.MIN_VALUE;
+            LocalDate date = null;
+            for (int i = 0; i < history.size(); i++) {
+                int epochDay = history.getEpochDay(i);
+                if (epochDay != lastEpochDay) {
+                    date = LocalDate.ofEpochDay(epochDay);
+                    lastEpochDay = epochDay;
+                }
+                update(history.get(i), date, true);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Reads the history like {@code MensaMain.readFileData}: the snapshot,
+     * binary if it is kept in the binary format and exists, followed by the
+     * records of the journal. Nothing is written.
+     *
+     * @param journal the journal of the history
+     * @throws IOException if the snapshot cannot be read
+     */
+    public void readHistory(MensaHistoryJournal journal) throws IOException {
+        File snapshot = journal.getCurrentSnapshotFile();
+        if (journal.isBinary() && snapshot.isFile()) {
+            readBinary(snapshot);
+        } else {
+            File text = journal.isBinary() ? new File("data/selectedMealList.txt") : snapshot;
+            if (text.isFile()) {
+                readText(text);
+            }
+        }
+        journal.replay(this);
+    }
+
+    /**
+     * Counts an added meal if it passes the filters.
+     *
+     * @param meal the added meal
+     */
+    @Override
+    public void added(MensaData meal) {
+        update(meal, dateOf(meal), true);
+    }
+
+    /**
+     * Subtracts a removed meal if it passes the filters.
+     *
+     * @param meal the removed meal
+     */
+    @Override
+    public void removed(MensaData meal) {
+        update(meal, dateOf(meal), false);
+    }
+
+    /**
+     * Returns the date of a meal, parsing its date only if it differs from the
+     * one of the previous meal.
+     *
+     * @param meal the meal
+     * @return the date of the meal
+     */
+    private LocalDate dateOf(MensaData meal) {
+        String mealDate = meal.getMealDate();
+        if (!mealDate.equals(lastMealDate)) {
+            lastDate = LocalDate.parse(mealDate, MensaData.formatter);
+            lastMealDate = mealDate;
+        }
+        return lastDate;
+    }
+
+    /**
+     * Adds a meal to or removes it from the totals and the rollups if it
+     * passes the filters.
+     *
+     * @param meal the meal
+     * @param date the date of the meal
+     * @param add  {@code true} to add the meal, {@code false} to remove it
+     */
+    private void update(MensaData meal, LocalDate date, boolean add) {
+        read++;
+        if ((from != null && date.isBefore(from)) || (to != null && date.isAfter(to))
+                || (locations != null && !locations.contains(meal.getMealLocation()))
+                || (types != null && !types.contains(meal.getMealType()))) {
+            return;
+        }
+        if (add) {
+            if (!date.equals(dayDate)) {
+                flush();
+                dayDate = date;
+            }
+            day.add(meal);
+        } else {
+            flush();
+            totals.remove(meal);
+            rollups.remove(meal, date);
+        }
+    }
+
+    /**
+     * Adds the meals of the current day to the totals and the rollups.
+     */
+    private void flush() {
+        if (!day.isEmpty()) {
+            totals.add(day);
+            rollups.add(dayDate, day);
+            day = new MensaHistoryTotals();
+        }
+    }
+
+    /**
+     * Writes the report: a single row with the totals, or one row per period
+     * of the given granularity that contains meals.
+     *
+     * @param writer      the writer to write to
+     * @param format      the file format
+     * @param granularity the length of the periods, {@code null} for the totals
+     * @throws IOException if the report cannot be written
+     */
+    public void write(Writer writer, Format format, MensaHistoryRollups.Granularity granularity)
+            throws IOException {
+        flush();
+        if (format == Format.JSON) {
+            writer.write("{\"granularity\":" + (granularity == null ? "null" : quote(granularity.name()))
+                    + ",\"from\":" + (from == null ? "null" : quote(from.format(MensaData.formatter)))
+                    + ",\"to\":" + (to == null ? "null" : quote(to.format(MensaData.formatter)))
+                    + ",\"meals\":" + totals.getCount() + ",\"rows\":[");
+        } else {
+            writer.write(String.join(";", COLUMNS) + "\n");
+        }
+        if (granularity == null) {
+            writeRow(writer, format, "total", totals, true);
+        } else {
+            boolean first = true;
+            for (Map.Entry<LocalDate, MensaHistoryTotals> entry : rollups.getRollup(granularity).entrySet()) {
+                writeRow(writer, format, entry.getKey().format(MensaData.formatter), entry.getValue(), first);
+                first = false;
+            }
+        }
+        if (format == Format.JSON) {
+            writer.write("\n]}\n");
+        }
+    }
+
+    /**
+     * Writes a single row of the report.
+     *
+     * @param writer the writer to write to
+     * @param format the file format
+     * @param period the first day of the period or {@code total}
+     * @param row    the totals of the row
+     * @param first  whether it is the first row
+     * @throws IOException if the row cannot be written
+     */
+    private static void writeRow(Writer writer, Format format, String period, MensaHistoryTotals row, boolean first)
+            throws IOException {
+        String[] values = { period, String.valueOf(row.getCount()), number(row.getKcal()),
+                number(row.getProteins()), number(row.getCarbs()), number(row.getFat()), number(row.getPrice()),
+                row.isEmpty() ? null : String.format(Locale.ROOT, "%.4f", row.getVeggieShare()) };
+        if (format == Format.CSV) {
+            writer.write(values[0]);
+            for (int i = 1; i < values.length; i++) {
+                writer.write(";" + (values[i] == null ? "" : values[i]));
+            }
+            writer.write("\n");
+            return;
+        }
+        writer.write(first ? "\n{" : ",\n{");
+        for (int i = 0; i < values.length; i++) {
+            String value = i == 0 ? quote(values[i]) : values[i] == null ? "null" : values[i];
+            writer.write((i == 0 ? "" : ",") + quote(COLUMNS[i]) + ":" + value);
+        }
+        writer.write("}");
+    }
+
+    /**
+     * Formats a sum with two decimals and a decimal point.
+     *
+     * @param value the sum
+     * @return the formatted sum
+     */
+    private static String number(float value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    /**
+     * Quotes a JSON string. The strings of a report contain no characters
+     * that need escaping.
+     *
+     * @param string the string
+     * @return the quoted string
+     */
+    private static String quote(String string) {
+        return "\"" + string + "\"";
+    }
+
+    /**
+     * Reads the history files given on the command line, or the history of the
+     * application if there are none, and writes the report.
+     *
+     * @param args the options followed by the history files
+     */
+    public static void main(String[] args) {
+        Format format = Format.CSV;
+        MensaHistoryRollups.Granularity granularity = null;
+        LocalDate from = null;
+        LocalDate to = null;
+        Set<MensaLocation> locations = null;
+        Set<MensaMealType> types = null;
+        File out = null;
+        List<File> files = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                if (!arg.startsWith("--")) {
+                    files.add(new File(arg));
+                    continue;
+                }
+                int separator = arg.indexOf('=');
+                String name = separator < 0 ? arg.substring(2) : arg.substring(2, separator);
+                String value = separator < 0 ? "" : arg.substring(separator + 1);
+                switch (name) {
+                    case "format":
+                        format = Format.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "granularity":
+                        granularity = MensaHistoryRollups.Granularity.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "from":
+                        from = LocalDate.parse(value, MensaData.formatter);
+                        break;
+                    case "to":
+                        to = LocalDate.parse(value, MensaData.formatter);
+                        break;
+                    case "location":
+                        locations = EnumSet.noneOf(MensaLocation.class);
+                        for (String location : value.split(",")) {
+                            locations.add(MensaLocation.valueOf(location.trim().toUpperCase(Locale.ROOT)));
+                        }
+                        break;
+                    case "type":
+                        types = EnumSet.noneOf(MensaMealType.class);
+                        for (String type : value.split(",")) {
+                            types.add(MensaMealType.valueOf(type.trim().toUpperCase(Locale.ROOT)));
+                        }
+                        break;
+                    case "out":
+                        out = new File(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unbekannte Option: " + arg);
+                }
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Verwendung: MensaReport [--format=csv|json] [--granularity=day|week|month]"
+                    + " [--from=<yyyy-MM-dd>] [--to=<yyyy-MM-dd>] [--location=<Orte>] [--type=<Typen>]"
+                    + " [--out=<Datei>] [<Historie>...]");
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        MensaReport report = new MensaReport(from, to, locations, types);
+        try {
+            if (files.isEmpty()) {
+                report.readHistory(MensaData.historyJournal);
+            } else {
+                for (File file : files) {
+                    report.read(file);
+                }
+            }
+            OutputStream stream = out == null ? System.out : new FileOutputStream(out);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+                report.write(writer, format, granularity);
+            }
+        } catch (IOException e) {
+            System.err.println("Bericht konnte nicht erstellt werden: " + e.getMessage());
+            System.exit(1);
+        }
+        System.err.println("Bericht erstellt: " + report.getRead() + " Einträge in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public Set<MensaLocation> getLocations() {
+        return locations;
+    }
+
+    public Set<MensaMealType> getTypes() {
+        return types;
+    }
+
+    public MensaHistoryTotals getTotals() {
+        flush();
+        return totals;
+    }
+
+    public MensaHistoryRollups getRollups() {
+        flush();
+        return rollups;
+    }
+
+    public long getRead() {
+        return read;
+    }
+}
@@ -0,0 +1,51 @@
+package pack;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.kit.aifb.atks.mensascraper.lib.*;
+
+/**
+ * The {@code MensaScraperSource} class is the {@link MensaMealSource} backed by
+ * the {@code KITMensaScraper} library. It converts the scraped
+ * {@code MensaMeal} objects into {@code MensaData} objects.
+ * 
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaScraperSource implements MensaMealSource {
+
+    // One scraper per thread, as the library does not document thread safety
+    private final ThreadLocal<KITMensaScraper> mensa = ThreadLocal.withInitial(KITMensaScraper::new);
+
+    /**
+     * Fetches the meals of one day using the {@code KITMensaScraper}.
+     *
+     * @param location the mensa location
+     * @param date     the date to fetch the meals for
+     * @return the meals of that day, an empty list if the mensa is closed
+     */
+    @Override
+    public List<MensaData> fetchMeals(MensaLocation location, LocalDate date) {
+        final List<MensaMeal> meals = mensa.get().fetchMeals(location, date);
+        List<MensaData> mealDataList = new ArrayList<>(meals.size());
+
+        for (MensaMeal meal : meals) {
+            String mealDate = date.toString();
+            String mealName = meal.getName();
+            float mealPrice = meal.getPrice();
+            MensaMealType mealType = meal.getType();
+            float mealKcal = meal.getKcal();
+            float mealProteins = meal.getProteins();
+            float mealCarbs = meal.getCarbs();
+            float mealFat = meal.getFat();
+
+            MensaData mealData = new MensaData(mealDate, mealName, mealPrice, mealType,
+                    mealKcal, mealProteins, mealCarbs, mealFat, location);
+
+            mealDataList.add(mealData);
+        }
+        return mealDataList;
+    }
+}
@@ -0,0 +1,438 @@
+package pack;
+
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaLocation;
+
+/**
+ * The {@code MensaSearchIndex} class is an inverted index over the names of
+ * the dishes in the meal plan and in the history.
+ * <p>
+ * Names are split into words at every character that is not a letter or a
+ * digit, so the parts of {@code Kartoffel-Gratin} are words of their own, next
+ * to the compound written together. Words are lower-cased and umlauts and
+ * {@code ß} are written out ({@code ä} as {@code ae}, {@code ß} as
+ * {@code ss}), so {@code Gemüse} is found by {@code gemüse} and
+ * {@code gemuese} alike. Every suffix of a word is indexed as well, so a query
+ * finds the parts of closed compounds: {@code gratin} matches
+ * {@code Kartoffelgratin}. A query word matches a word of a dish that contains
+ * it; if no word contains it, words within a small edit distance match
+ * instead. All query words have to match. Words and suffixes are kept
+ * sorted, so the ones starting with a query word are a range of the index;
+ * typos are only looked for among the words of about the same length.
+ * <p>
+ * The index is a {@code MensaDataListener}: it is updated day by day as the
+ * meal plan arrives and entry by entry as the history changes. Dishes that are
+ * neither in the plan nor in the history anymore are dropped. The index is
+ * thread-safe.
+ *
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaSearchIndex implements MensaDataListener {
+
+    /**
+     * The minimum length of an indexed suffix of a word.
+     */
+    private static final int MIN_SUFFIX = 3;
+
+    // Suffixes of all words, each with the dishes having a word with that suffix
+    private final NavigableMap<String, Set<MensaDish>> suffixes = new TreeMap<>();
+    // All words, each with the dishes containing it
+    private final NavigableMap<String, Set<MensaDish>> words = new TreeMap<>();
+    // All words by their length, the candidates for typos
+    private final Map<Integer, Set<String>> wordsOfLength = new HashMap<>();
+
+    private final Map<MensaDish, Set<MensaDay>> planDays = new HashMap<>();
+    private final Map<MensaDish, Integer> historyCounts = new HashMap<>();
+    private final Map<MensaDay, Set<MensaDish>> dishesOfDay = new HashMap<>();
+
+    /**
+     * Replaces the content of the index with the days in the
+     * {@code MensaData.mealStore} and the meals of the history.
+     */
+    public synchronized void rebuild() {
+        suffixes.clear();
+        words.clear();
+        wordsOfLength.clear();
+        planDays.clear();
+        historyCounts.clear();
+        dishesOfDay.clear();
+        for (LocalDate date : MensaData.createDateList()) {
+            for (MensaLocation location : MensaData.locations) {
+                if (MensaData.mealStore.containsDay(location, date)) {
+                    indexDay(new MensaDay(location, date));
+                }
+            }
+        }
+        for (MensaData meal : MensaData.selectedMealList.snapshot()) {
+            addHistoryMeal(meal.getDish());
+        }
+    }
+
+    @Override
+    public synchronized void dayLoaded(MensaDay day) {
+        if (!day.getDate().isBefore(MensaData.endDate)) {
+            return; // Fetched ahead, indexed once the range reaches it
+        }
+        indexDay(day);
+    }
+
+    @Override
+    public synchronized void windowMoved(LocalDate start, LocalDate end) {
+        for (MensaDay day : new ArrayList<>(dishesOfDay.keySet())) {
+            if (day.getDate().isBefore(start) || !day.getDate().isBefore(end)) {
+                for (MensaDish dish : dishesOfDay.remove(day)) {
+                    removePlanDay(dish, day);
+                }
+            }
+        }
+        for (LocalDate date : MensaData.createDateList()) {
+            for (MensaLocation location : MensaData.locations) {
+                MensaDay day = new MensaDay(location, date);
+                if (!dishesOfDay.containsKey(day) && MensaData.mealStore.containsDay(location, date)) {
+                    indexDay(day);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void mealAdded(int id, MensaData meal, int index) {
+        addHistoryMeal(meal.getDish());
+    }
+
+    @Override
+    public synchronized void mealRemoved(int id, MensaData meal, int index) {
+        MensaDish dish = meal.getDish();
+        Integer count = historyCounts.get(dish);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            historyCounts.put(dish, count - 1);
+        } else {
+            historyCounts.remove(dish);
+            dropIfUnused(dish);
+        }
+    }
+
+    /**
+     * Searches the dishes whose names match all words of a query. Dishes
+     * matching more words exactly or as a prefix come first, then dishes in
+     * the meal plan, then dishes chosen more often.
+     *
+     * @param query the words to search for
+     * @param limit the maximum number of results
+     * @return the matching dishes, best match first
+     */
+    public synchronized List<Hit> search(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<MensaDish, Integer> scores = null;
+        for (String term : terms) {
+            Map<MensaDish, Integer> termScores = match(term);
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                scores.keySet().retainAll(termScores.keySet());
+                for (Map.Entry<MensaDish, Integer> entry : scores.entrySet()) {
+                    entry.setValue(entry.getValue() + termScores.get(entry.getKey()));
+                }
+            }
+            if (scores.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(scores.size());
+        for (Map.Entry<MensaDish, Integer> entry : scores.entrySet()) {
+            MensaDish dish = entry.getKey();
+            Set<MensaDay> days = planDays.get(dish);
+            hits.add(new Hit(dish, entry.getValue(),
+                    days == null ? Collections.emptyList() : new ArrayList<>(new TreeSet<>(days)),
+                    historyCounts.getOrDefault(dish, 0)));
+        }
+        hits.sort(Comparator.comparingInt(Hit::getScore).reversed()
+                .thenComparing(hit -> hit.getPlanDays().isEmpty())
+                .thenComparing(Comparator.comparingInt(Hit::getHistoryCount).reversed())
+                .thenComparing(hit -> hit.getDish().getName()));
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    /**
+     * Scores the dishes matching a single query word: {@code 3} if a word of
+     * the dish is the query word, {@code 2} if a word starts with it,
+     * {@code 1} if a word contains it and, only if no word contains it,
+     * {@code 0} for words within the edit distance.
+     *
+     * @param term the normalized query word
+     * @return the matching dishes with their scores
+     */
+    private Map<MensaDish, Integer> match(String term) {
+        Map<MensaDish, Integer> scores = new HashMap<>();
+        if (term.length() >= MIN_SUFFIX) {
+            for (Map.Entry<String, Set<MensaDish>> entry : suffixes.subMap(term, true, term + Character.MAX_VALUE,
+                    false).entrySet()) {
+                for (MensaDish dish : entry.getValue()) {
+                    scores.merge(dish, 1, Math::max);
+                }
+            }
+        }
+        for (Map.Entry<String, Set<MensaDish>> entry : words.subMap(term, true, term + Character.MAX_VALUE,
+                false).entrySet()) {
+            int score = entry.getKey().equals(term) ? 3 : 2;
+            for (MensaDish dish : entry.getValue()) {
+                scores.merge(dish, score, Math::max);
+            }
+        }
+        if (!scores.isEmpty()) {
+            return scores;
+        }
+
+        // Nothing contains the word, look for typos; the distance is at least the difference in length
+        int maxDistance = term.length() <= 4 ? 1 : 2;
+        for (int length = term.length() - maxDistance; length <= term.length() + maxDistance; length++) {
+            for (String word : wordsOfLength.getOrDefault(length, Collections.emptySet())) {
+                if (distance(term, word, maxDistance) <= maxDistance) {
+                    for (MensaDish dish : words.get(word)) {
+                        scores.putIfAbsent(dish, 0);
+                    }
+                }
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Replaces the dishes indexed for a day with the meals stored for it.
+     *
+     * @param day the location and date
+     */
+    private void indexDay(MensaDay day) {
+        Set<MensaDish> dishes = new HashSet<>();
+        for (MensaData meal : MensaData.mealStore.getMeals(day.getLocation(), day.getDate())) {
+            dishes.add(meal.getDish());
+        }
+        Set<MensaDish> previous = dishesOfDay.put(day, dishes);
+        if (previous != null) {
+            for (MensaDish dish : previous) {
+                if (!dishes.contains(dish)) {
+                    removePlanDay(dish, day);
+                }
+            }
+        }
+        for (MensaDish dish : dishes) {
+            addDish(dish);
+            planDays.computeIfAbsent(dish, d -> new HashSet<>()).add(day);
+        }
+    }
+
+    /**
+     * Removes a day from the plan days of a dish, and the dish from the index
+     * if it is no longer offered nor in the history.
+     *
+     * @param dish the dish
+     * @param day  the day that no longer offers the dish
+     */
+    private void removePlanDay(MensaDish dish, MensaDay day) {
+        Set<MensaDay> days = planDays.get(dish);
+        days.remove(day);
+        if (days.isEmpty()) {
+            planDays.remove(dish);
+            dropIfUnused(dish);
+        }
+    }
+
+    /**
+     * Counts a meal of the history.
+     *
+     * @param dish the dish of the meal
+     */
+    private void addHistoryMeal(MensaDish dish) {
+        addDish(dish);
+        historyCounts.merge(dish, 1, Integer::sum);
+    }
+
+    /**
+     * Adds the words of a dish to the index if it is not indexed yet.
+     *
+     * @param dish the dish
+     */
+    private void addDish(MensaDish dish) {
+        if (planDays.containsKey(dish) || historyCounts.containsKey(dish)) {
+            return; // Already indexed
+        }
+        for (String word : tokenize(dish.getName())) {
+            words.computeIfAbsent(word, w -> new HashSet<>()).add(dish);
+            wordsOfLength.computeIfAbsent(word.length(), l -> new HashSet<>()).add(word);
+            for (int i = 0; i + MIN_SUFFIX <= word.length(); i++) {
+                suffixes.computeIfAbsent(word.substring(i), s -> new HashSet<>()).add(dish);
+            }
+        }
+    }
+
+    /**
+     * Removes the words of a dish from the index if it is neither in the plan
+     * nor in the history anymore.
+     *
+     * @param dish the dish
+     */
+    private void dropIfUnused(MensaDish dish) {
+        if (planDays.containsKey(dish) || historyCounts.containsKey(dish)) {
+            return;
+        }
+        for (String word : tokenize(dish.getName())) {
+            removeFrom(words, word, dish);
+            if (!words.containsKey(word)) {
+                removeFrom(wordsOfLength, word.length(), word);
+            }
+            for (int i = 0; i + MIN_SUFFIX <= word.length(); i++) {
+                removeFrom(suffixes, word.substring(i), dish);
+            }
+        }
+    }
+
+    private static <K, V> void removeFrom(Map<K, Set<V>> map, K key, V value) {
+        Set<V> values = map.get(key);
+        if (values != null && values.remove(value) && values.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * Splits a text into normalized words: lower case, umlauts and {@code ß}
+     * written out, other accents removed. A hyphenated compound yields its
+     * parts and the parts written together.
+     *
+     * @param text the text
+     * @return the distinct words in the order they occur
+     */
+    static List<String> tokenize(String text) {
+        String lower = text.toLowerCase(Locale.GERMAN).replace("ä", "ae").replace("ö", "oe").replace("ü", "ue")
+                .replace("ß", "ss");
+        String plain = Normalizer.normalize(lower, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String compound : plain.split("[^\\p{L}\\p{N}-]+")) {
+            for (String token : compound.split("-+")) {
+                if (!token.isEmpty()) {
+                    tokens.add(token);
+                }
+            }
+            String joined = compound.replace("-", "");
+            if (!joined.isEmpty()) {
+                tokens.add(joined); // Kartoffel-Gratin is also found as Kartoffelgratin
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * Computes the edit distance with transpositions between two words, giving
+     * up once it exceeds a limit.
+     *
+     * @param a     the first word
+     * @param b     the second word
+     * @param limit the largest distance of interest
+     * @return the distance, or {@code limit + 1} if it is larger than the limit
+     */
+    static int distance(String a, String b, int limit) {
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, previous2[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[b.length()], limit + 1);
+    }
+
+    /**
+     * The {@code Hit} class is a dish found by a search, together with the
+     * days of the meal plan offering it and how often it is in the history.
+     */
+    public static class Hit {
+
+        private final MensaDish dish;
+        private final int score;
+        private final List<MensaDay> planDays;
+        private final int historyCount;
+
+        Hit(MensaDish dish, int score, List<MensaDay> planDays, int historyCount) {
+            this.dish = dish;
+            this.score = score;
+            this.planDays = Collections.unmodifiableList(planDays);
+            this.historyCount = historyCount;
+        }
+
+        /**
+         * Returns the text shown for the hit in the plan view.
+         *
+         * @return the name of the dish and where it occurs
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(dish.getName());
+            if (!planDays.isEmpty()) {
+                MensaDay first = planDays.get(0);
+                text.append(" (").append(first.getDate().format(MensaData.formatter)).append(", ")
+                        .append(first.getLocation()).append(")");
+            }
+            if (historyCount > 0) {
+                text.append(" – ").append(historyCount).append("x in der Historie");
+            }
+            return text.toString();
+        }
+
+        public MensaDish getDish() {
+            return dish;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public List<MensaDay> getPlanDays() {
+            return planDays;
+        }
+
+        public int getHistoryCount() {
+            return historyCount;
+        }
+    }
+}
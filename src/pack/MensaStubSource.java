@@ -0,0 +1,88 @@
+package pack;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.kit.aifb.atks.mensascraper.lib.MensaLocation;
+import edu.kit.aifb.atks.mensascraper.lib.MensaMealType;
+
+/**
+ * The {@code MensaStubSource} class is a stand-in for the
+ * {@code KITMensaScraper}. It generates a deterministic meal plan and sleeps
+ * for a configurable latency per request, so that fetch times can be measured
+ * without access to the KIT website.
+ * <p>
+ * Select it with {@code -Dmensa.source=stub}, the latency in milliseconds can
+ * be set with {@code -Dmensa.stubLatency} (default 400).
+ * 
+ * @author Philipp Schmidt (uggro)
+ * @since version 1.3
+ */
+public class MensaStubSource implements MensaMealSource {
+
+    private static final String[] MEAL_NAMES = {
+            "Zartweizen-Kartoffel-Gratin mit Karotten",
+            "Chili con Carne mit Bohnen, Mais und Paprika dazu Baguettebrötchen",
+            "Blattsalat Zucchinisalat",
+            "Erdbeerjoghurt",
+            "Schweinegeschnetzeltes mit Spätzle",
+            "Seelachsfilet mit Kartoffelsalat",
+            "Gemüse-Lasagne",
+            "Linsen-Dal mit Basmatireis"
+    };
+
+    private static final int MEALS_PER_DAY = 6;
+
+    private final long latencyMillis;
+
+    /**
+     * Constructs a new {@code MensaStubSource} with the latency taken from the
+     * system property {@code mensa.stubLatency}.
+     */
+    public MensaStubSource() {
+        this(Long.getLong("mensa.stubLatency", 400));
+    }
+
+    /**
+     * Constructs a new {@code MensaStubSource} with the given latency.
+     *
+     * @param latencyMillis the simulated duration of one request in milliseconds
+     */
+    public MensaStubSource(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Returns a generated meal plan for the given day after sleeping for the
+     * configured latency. The mensa is closed on weekends.
+     *
+     * @param location the mensa location
+     * @param date     the date to fetch the meals for
+     * @return the generated meals of that day
+     */
+    @Override
+    public List<MensaData> fetchMeals(MensaLocation location, LocalDate date) {
+        try {
+            Thread.sleep(latencyMillis); // Simulate the network round-trip
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<MensaData> meals = new ArrayList<>();
+        if (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+            return meals;
+        }
+
+        MensaMealType[] mealTypes = MensaMealType.values();
+        int seed = (int) date.toEpochDay() + location.ordinal();
+        for (int i = 0; i < MEALS_PER_DAY; i++) {
+            int n = Math.floorMod(seed + i, MEAL_NAMES.length);
+            meals.add(new MensaData(date.toString(), MEAL_NAMES[n], 1.5f + n * 0.4f,
+                    mealTypes[Math.floorMod(seed + i, mealTypes.length)],
+                    300f + n * 60f, 10f + n * 3f, 40f + n * 5f, 5f + n * 2f, location));
+        }
+        return meals;
+    }
+}